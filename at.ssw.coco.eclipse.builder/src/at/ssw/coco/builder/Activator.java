@@ -16,6 +16,7 @@ package at.ssw.coco.builder;
 
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ISavedState;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.QualifiedName;
@@ -48,16 +49,27 @@ public class Activator extends AbstractUIPlugin {
 	public static final QualifiedName COCO_TRACE_STRING = new QualifiedName(
 			Activator.PLUGIN_ID, "COCO_TRACE_STRING");
 
+	public static final QualifiedName MINIMIZE_COCO_SCANNER = new QualifiedName(
+			Activator.PLUGIN_ID, "MINIMIZE_COCO_SCANNER");
+
+	public static final QualifiedName MAP_COCO_SCANNER_INPUT = new QualifiedName(
+			Activator.PLUGIN_ID, "MAP_COCO_SCANNER_INPUT");
+
 	public static final QualifiedName ATG_FILE_LOCATION = new QualifiedName(
 			Activator.PLUGIN_ID, "ATG_FILE_LOCATION");
 	public static final QualifiedName ATG_MAPPING = new QualifiedName(
 			Activator.PLUGIN_ID, "ATG_MAPPING");
 
+	public static final QualifiedName ATG_BUILD_KEY = new QualifiedName(
+			Activator.PLUGIN_ID, "ATG_BUILD_KEY");
+
 	// The shared instance
 	private static Activator plugin;
 
 	private final IResourceChangeListener postBuildListener = new PostBuildListener();
 
+	private FrameDependencyIndex frameDependencyIndex;
+
 	/**
 	 * The constructor
 	 */
@@ -75,6 +87,11 @@ public class Activator extends AbstractUIPlugin {
 
 		IWorkspace workspace = ResourcesPlugin.getWorkspace();
 		workspace.addResourceChangeListener(postBuildListener, IResourceChangeEvent.POST_BUILD);
+
+		frameDependencyIndex = new FrameDependencyIndex(workspace.getRoot(), getStateLocation());
+		ISavedState lastState = workspace.addSaveParticipant(PLUGIN_ID, frameDependencyIndex);
+		frameDependencyIndex.restore(lastState);
+		workspace.addResourceChangeListener(frameDependencyIndex, IResourceChangeEvent.POST_CHANGE);
 	}
 
 	/*
@@ -85,6 +102,8 @@ public class Activator extends AbstractUIPlugin {
 	public void stop(BundleContext context) throws Exception {
 		IWorkspace workspace = ResourcesPlugin.getWorkspace();
 		workspace.removeResourceChangeListener(postBuildListener);
+		workspace.removeResourceChangeListener(frameDependencyIndex);
+		workspace.removeSaveParticipant(PLUGIN_ID);
 
 		plugin = null;
 		super.stop(context);
@@ -98,4 +117,13 @@ public class Activator extends AbstractUIPlugin {
 	public static Activator getDefault() {
 		return plugin;
 	}
+
+	/**
+	 * Returns the index of .atg files by frames directory
+	 *
+	 * @return the frame dependency index
+	 */
+	public FrameDependencyIndex getFrameDependencyIndex() {
+		return frameDependencyIndex;
+	}
 }
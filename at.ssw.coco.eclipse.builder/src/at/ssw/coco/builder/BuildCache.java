@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.builder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import at.ssw.coco.core.CoreUtilities;
+import at.ssw.coco.core.GeneratorOptions;
+
+/**
+ * Remembers the inputs of the last successful Coco/R run of an ATG file, so
+ * that the builder can skip grammars whose inputs did not change.
+ * <p>
+ * The key is a digest over the ATG text, the frame files, the package name,
+ * the trace string and the output directory. It is stored as a persistent
+ * property on the ATG file and therefore survives workspace restarts.
+ */
+final class BuildCache {
+	/** Bump this whenever the generated output changes for the same inputs. */
+	private static final String KEY_VERSION = "2";
+
+	private static final String DIGEST_ALGORITHM = "SHA-1";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private BuildCache() {
+		// private constructor - prevent instantiation of this utility class
+	}
+
+	/**
+	 * Computes the build key of an ATG file.
+	 *
+	 * @param atgPath The ATG file.
+	 * @param framesDirPath The configured frames directory.
+	 * @param sourceDirPath The directory of the ATG file (fallback for frame files).
+	 * @param outputDirPath The output directory.
+	 * @param packageName The package name of the generated files.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 * @param options The generator options.
+	 * @return the key, or <code>null</code> if it could not be computed.
+	 */
+	public static String computeKey(IPath atgPath, IPath framesDirPath, IPath sourceDirPath,
+			IPath outputDirPath, String packageName, String traceStr, GeneratorOptions options) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+			update(digest, KEY_VERSION);
+			update(digest, atgPath.toFile());
+			update(digest, findFrame(options.getScannerFrame(), framesDirPath, sourceDirPath));
+			update(digest, findFrame(CoreUtilities.PARSER_TEMPLATE, framesDirPath, sourceDirPath));
+			update(digest, findFrame(CoreUtilities.COPYRIGHT_TEMPLATE, framesDirPath, sourceDirPath));
+			update(digest, packageName);
+			update(digest, traceStr);
+			update(digest, options.getKey());
+			update(digest, outputDirPath.toOSString());
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			BuilderUtilities.logError(e.getMessage(), e);
+		} catch (IOException e) {
+			// unreadable input, always rebuild
+		}
+		return null;
+	}
+
+	/**
+	 * @param resource The ATG file.
+	 * @param key The current build key.
+	 * @param outputDirPath The output directory.
+	 * @return whether the generated files of <code>resource</code> are up to date.
+	 */
+	public static boolean isUpToDate(IResource resource, String key, IPath outputDirPath) {
+		if (key == null) {
+			return false;
+		}
+		try {
+			if (!key.equals(resource.getPersistentProperty(Activator.ATG_BUILD_KEY))) {
+				return false;
+			}
+		} catch (CoreException e) {
+			return false;
+		}
+		return outputDirPath.append(CoreUtilities.SCANNER_OUTPUT).toFile().isFile()
+			&& outputDirPath.append(CoreUtilities.PARSER_OUTPUT).toFile().isFile();
+	}
+
+	/**
+	 * Stores the key of a successful generation, or clears it if <code>key</code> is
+	 * <code>null</code>.
+	 *
+	 * @param resource The ATG file.
+	 * @param key The build key.
+	 */
+	public static void store(IResource resource, String key) {
+		try {
+			resource.setPersistentProperty(Activator.ATG_BUILD_KEY, key);
+		} catch (CoreException e) {
+			// not stored, the next build regenerates
+		}
+	}
+
+	/**
+	 * Resolves a frame file the same way Coco/R does: the frames directory first,
+	 * then the source directory.
+	 */
+	private static File findFrame(String name, IPath framesDirPath, IPath sourceDirPath) {
+		File frame = framesDirPath.append(name).toFile();
+		if (!frame.exists()) {
+			frame = sourceDirPath.append(name).toFile();
+		}
+		return frame;
+	}
+
+	private static void update(MessageDigest digest, File file) throws IOException {
+		if (!file.isFile()) {
+			digest.update((byte) 0);
+			return;
+		}
+		digest.update((byte) 1);
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				digest.update(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) throws UnsupportedEncodingException {
+		if (s == null) {
+			digest.update((byte) 0);
+			return;
+		}
+		digest.update((byte) 1);
+		digest.update(s.getBytes("UTF-8"));
+		digest.update((byte) 0);
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.builder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.eclipse.core.runtime.Platform;
+
+import at.ssw.coco.core.BuildStatistics;
+
+/**
+ * Appends the statistics of grammar builds as JSON lines to <code>timing.jsonl</code>
+ * in the state location of the builder plug-in.
+ * <p>
+ * Logging is enabled with the debug option
+ * <code>at.ssw.coco.eclipse.builder/debug/timing</code> (see <code>.options</code>).
+ */
+final class BuildStatisticsLog {
+	private static final String DEBUG_OPTION = Activator.PLUGIN_ID + "/debug/timing";
+
+	private static final String LOG_FILE = "timing.jsonl";
+
+	private BuildStatisticsLog() {
+		// private constructor - prevent instantiation of this utility class
+	}
+
+	/**
+	 * @return whether build statistics should be collected.
+	 */
+	public static boolean isEnabled() {
+		return "true".equalsIgnoreCase(Platform.getDebugOption(DEBUG_OPTION));
+	}
+
+	/**
+	 * Creates the statistics for building an ATG file if logging is enabled.
+	 *
+	 * @param grammar The location of the ATG file.
+	 * @return the statistics, or <code>null</code>.
+	 */
+	public static BuildStatistics create(String grammar) {
+		return isEnabled() ? new BuildStatistics(grammar) : null;
+	}
+
+	/**
+	 * Appends <code>statistics</code> to the log.
+	 *
+	 * @param statistics The statistics, or <code>null</code>.
+	 */
+	public static synchronized void log(BuildStatistics statistics) {
+		if (statistics == null) {
+			return;
+		}
+		File file = Activator.getDefault().getStateLocation().append(LOG_FILE).toFile();
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+			try {
+				writer.write(statistics.toJson());
+				writer.write('\n');
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			BuilderUtilities.logError(e.getMessage(), e);
+		}
+	}
+}
@@ -17,11 +17,19 @@
 package at.ssw.coco.builder;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -31,19 +39,30 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
 import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaModelMarker;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 
+import at.ssw.coco.core.BuildStatistics;
 import at.ssw.coco.core.CocoError;
 import at.ssw.coco.core.CoreUtilities;
+import at.ssw.coco.core.GeneratorOptions;
 import at.ssw.coco.core.Mapping;
 
 /**
@@ -53,24 +72,224 @@ import at.ssw.coco.core.Mapping;
  * @author Christian Wressnegger <k0356707@students.jku.at>
  * @author Andreas Woess <andwoe@users.sf.net>
  */
-public class CocoBuildVisitor implements IResourceVisitor, IResourceDeltaVisitor {
-	private final Set<IResource> alreadyBuilt = new HashSet<IResource>();
+public class CocoBuildVisitor implements IResourceVisitor, IResourceProxyVisitor, IResourceDeltaVisitor {
+	/** Upper bound for the number of grammars generated concurrently. */
+	private static final int MAX_WORKERS = Runtime.getRuntime().availableProcessors();
+
+	/** Directory in the plug-in state location for the private output of Coco/R runs. */
+	private static final String STAGING_DIR = "staging";
+
+	/** The trace file written by Coco/R next to the ATG file. */
+	private static final String TRACE_OUTPUT = "trace.txt";
+
+	/** The files generated by Coco/R. */
+	private static final String[] GENERATED_FILES = { CoreUtilities.SCANNER_OUTPUT, CoreUtilities.PARSER_OUTPUT };
+
+	/**
+	 * State of a single ATG file passing through the three build phases: prepared on
+	 * the builder thread, generated on a worker thread and finished in the workspace
+	 * operation at the end of the build.
+	 */
+	private static final class AtgBuild {
+		final IResource resource;
+		final IPath filePath;
+		final IPath outputDirPath;
+		final IPath framesDirPath;
+		final String packageName;
+		final String traceStr;
+		final GeneratorOptions options;
+		final String buildKey;
+		final IContainer[] outputContainers;
+		final Mapping mapping;
+
+		List<CocoError> errors;
+
+		/** phase times and grammar metrics, <code>null</code> unless timing is enabled */
+		final BuildStatistics statistics;
+
+		/** locations of the generated files whose content changed */
+		final List<IPath> changedFiles = new ArrayList<IPath>(GENERATED_FILES.length);
+
+		AtgBuild(IResource resource, IPath filePath, IPath outputDirPath, IPath framesDirPath,
+				String packageName, String traceStr, GeneratorOptions options, String buildKey,
+				IContainer[] outputContainers) {
+			this.resource = resource;
+			this.filePath = filePath;
+			this.outputDirPath = outputDirPath;
+			this.framesDirPath = framesDirPath;
+			this.packageName = packageName;
+			this.traceStr = traceStr;
+			this.options = options;
+			this.buildKey = buildKey;
+			this.outputContainers = outputContainers;
+			boolean outputInWorkspace = outputContainers.length != 0; // mapping useful?
+			this.mapping = outputInWorkspace ? new Mapping() : null;
+			this.statistics = BuildStatisticsLog.create(filePath.toOSString());
+		}
+
+		/**
+		 * Runs Coco/R into a private staging directory and copies the generated files
+		 * whose content changed to the output directory. Does not touch the workspace,
+		 * may be called from any thread.
+		 *
+		 * @param stagingRoot The directory to create the staging directory in.
+		 */
+		void generate(File stagingRoot) {
+			File stagingDir = null;
+			try {
+				stagingDir = GeneratedFiles.createStagingDir(stagingRoot);
+				errors = execute(filePath.toOSString(),
+						framesDirPath.toOSString(), stagingDir.getPath() + File.separator,
+						packageName, traceStr, mapping, statistics, options);
+				long start = System.nanoTime();
+				for (String name : GENERATED_FILES) {
+					publish(stagingDir, name);
+				}
+
+				// persist the mapping of a newly generated parser
+				File parserFile = outputDirPath.append(CoreUtilities.PARSER_OUTPUT).toFile();
+				if (mapping != null && new File(stagingDir, CoreUtilities.PARSER_OUTPUT).isFile()) {
+					MappingFile.write(new File(stagingDir, MappingFile.FILE_NAME), parserFile, filePath, mapping);
+					publish(stagingDir, MappingFile.FILE_NAME);
+				}
+				if (statistics != null) {
+					statistics.addSince(BuildStatistics.Phase.WRITE, start);
+				}
+			} catch (IOException e) {
+				errors = new ArrayList<CocoError>(errors != null ? errors : Collections.<CocoError>emptyList());
+				errors.add(new CocoError(false, "Cannot generate file: " + e.getMessage()));
+			} catch (RuntimeException e) {
+				BuilderUtilities.logError(e.getMessage(), e);
+				errors = Collections.singletonList(new CocoError(false, "Coco/R failed: " + e));
+			} finally {
+				GeneratedFiles.delete(stagingDir);
+			}
+		}
+
+		private void publish(File stagingDir, String name) throws IOException {
+			IPath target = outputDirPath.append(name);
+			if (GeneratedFiles.publish(new File(stagingDir, name), target.toFile())) {
+				changedFiles.add(target);
+			}
+		}
+	}
+
+	/** Delta flags of changes that can affect the generated files. */
+	private static final int CONTENT_CHANGED = IResourceDelta.CONTENT | IResourceDelta.REPLACED
+			| IResourceDelta.ENCODING | IResourceDelta.TYPE | IResourceDelta.LOCAL_CHANGED;
+
+	private final Set<IResource> affectedAtgs = new LinkedHashSet<IResource>();
+
+	/** Java output folders of the visited project, never searched for grammar files */
+	private final Set<IPath> outputLocations = new HashSet<IPath>();
 
 	public boolean visit(IResource resource) throws CoreException {
-		process(resource);
-		return true; // visit children
+		if (resource.getType() == IResource.FILE) {
+			if (isGrammarFile(resource.getName())) {
+				process(resource);
+			}
+			return false;
+		}
+		if (resource.getType() == IResource.PROJECT) {
+			collectOutputLocations((IProject) resource);
+		}
+		return !isExcluded(resource);
+	}
+
+	public boolean visit(IResourceProxy proxy) throws CoreException {
+		if (proxy.getType() == IResource.FILE) {
+			if (isGrammarFile(proxy.getName())) {
+				process(proxy.requestResource());
+			}
+			return false;
+		}
+		if (proxy.getType() == IResource.PROJECT) {
+			collectOutputLocations((IProject) proxy.requestResource());
+			return true;
+		}
+		return !(proxy.isDerived() || proxy.isTeamPrivateMember() || proxy.getName().startsWith(".")
+				|| outputLocations.contains(proxy.requestFullPath()));
 	}
 
 	public boolean visit(IResourceDelta delta) throws CoreException {
-		if (delta.getKind() != IResourceDelta.REMOVED) {
-			process(delta.getResource());
+		if (delta.getKind() == IResourceDelta.REMOVED) {
+			return false; // nothing to build in removed resources
+		}
+		IResource resource = delta.getResource();
+		if (resource.getType() == IResource.FILE) {
+			// ignore marker-only and sync-only changes
+			if (isGrammarFile(resource.getName())
+					&& (delta.getKind() == IResourceDelta.ADDED || (delta.getFlags() & CONTENT_CHANGED) != 0)) {
+				process(resource);
+			}
+			return false;
 		}
-		return true; // visit children
+		if (resource.getType() == IResource.PROJECT) {
+			collectOutputLocations((IProject) resource);
+		}
+		return !isExcluded(resource);
+	}
+
+	/**
+	 * @param container A folder, project or the workspace root.
+	 * @return whether <code>container</code> cannot hold grammar files: derived and
+	 *         team private folders, hidden folders and Java output folders.
+	 */
+	private boolean isExcluded(IResource container) {
+		if (container.getType() != IResource.FOLDER) {
+			return false;
+		}
+		return container.isDerived() || container.isTeamPrivateMember()
+			|| container.getName().startsWith(".")
+			|| outputLocations.contains(container.getFullPath());
+	}
+
+	/**
+	 * Remembers the Java output folders of <code>project</code> unless they are
+	 * also used as source folders.
+	 *
+	 * @param project The visited project.
+	 */
+	private void collectOutputLocations(IProject project) {
+		try {
+			if (!project.hasNature(JavaCore.NATURE_ID)) {
+				return;
+			}
+			IJavaProject javaProject = JavaCore.create(project);
+			Set<IPath> sourceLocations = new HashSet<IPath>();
+			sourceLocations.add(project.getFullPath());
+			List<IPath> candidates = new ArrayList<IPath>();
+			candidates.add(javaProject.getOutputLocation());
+			for (IClasspathEntry entry : javaProject.getRawClasspath()) {
+				if (entry.getEntryKind() == IClasspathEntry.CPE_SOURCE) {
+					sourceLocations.add(entry.getPath());
+					if (entry.getOutputLocation() != null) {
+						candidates.add(entry.getOutputLocation());
+					}
+				}
+			}
+			candidates.removeAll(sourceLocations);
+			outputLocations.addAll(candidates);
+		} catch (CoreException e) {
+			// project not open or no valid Java project, do not exclude anything
+		}
+	}
+
+	/**
+	 * @param name The file name.
+	 * @return whether the file is an .atg or a Coco .frame file.
+	 */
+	private static boolean isGrammarFile(String name) {
+		return name.regionMatches(true, name.length() - CoreUtilities.ATG_EXTENSION.length() - 1,
+				"." + CoreUtilities.ATG_EXTENSION, 0, CoreUtilities.ATG_EXTENSION.length() + 1)
+			|| CoreUtilities.SCANNER_TEMPLATE.equalsIgnoreCase(name)
+			|| CoreUtilities.MAPPED_SCANNER_TEMPLATE.equalsIgnoreCase(name)
+			|| CoreUtilities.PARSER_TEMPLATE.equalsIgnoreCase(name);
 	}
 
 	/**
 	 * Visits the given resource and in case it is an .atg or a Coco .frame file,
-	 * calls Coco/R to rebuild the scanner and parser files.
+	 * remembers the affected .atg files for {@link #build(IProgressMonitor)}.
 	 *
 	 * @param resource The IResource to process.
 	 * @throws CoreException
@@ -82,112 +301,213 @@ public class CocoBuildVisitor implements IResourceVisitor, IResourceDeltaVisitor
 
 		String extension = resource.getFileExtension();
 		if (CoreUtilities.ATG_EXTENSION.equalsIgnoreCase(extension)) {
-			buildAtgOnce(resource);
+			affectedAtgs.add(resource);
 		} else if (CoreUtilities.SCANNER_TEMPLATE.equalsIgnoreCase(resource.getName())
+				|| CoreUtilities.MAPPED_SCANNER_TEMPLATE.equalsIgnoreCase(resource.getName())
 				|| CoreUtilities.PARSER_TEMPLATE.equalsIgnoreCase(resource.getName())) {
-			IResource[] affectedAtgs = findDependentAtgs(
-					resource.getWorkspace().getRoot(), resource.getParent());
-			for (IResource atg : affectedAtgs) {
-				buildAtgOnce(atg);
-			}
+			IResource[] dependentAtgs = Activator.getDefault().getFrameDependencyIndex()
+					.getDependentAtgs(resource.getParent());
+			affectedAtgs.addAll(Arrays.asList(dependentAtgs));
 		}
 	}
 
 	/**
-	 * Search the workspace for .atg files which depend on the .frame files in <code>framesDir</code>.
+	 * Generates the parser and scanner java files of all .atg files collected by this
+	 * visitor using Coco/R. Independent grammars are generated on a bounded worker pool,
+	 * markers and folder refreshes are applied in a single workspace operation afterwards.
 	 *
-	 * @param root The workspace root (or any container therein).
-	 * @param framesDir The folder which contains the .frame files.
-	 * @return The found resources.
+	 * @param monitor The progress monitor.
 	 * @throws CoreException
 	 */
-	private static IResource[] findDependentAtgs(IContainer root, IResource framesDir) throws CoreException {
-		List<IResource> atgs = new ArrayList<IResource>();
-		for (IResource member : root.members()) {
-			if (!member.isAccessible())
-				continue; // resource does not exist or project not open
-
-			if (member.getType() == IResource.FILE) { // file
-				if (isAtg(member)) {
-					IPath framesDirPath = getFramesDirPath(member, null);
-					if (framesDirPath != null && framesDirPath.equals(framesDir.getLocation())) {
-						// custom frame files directory
-						atgs.add(member);
-					} else if (framesDirPath == null && framesDir.equals(member.getParent())) {
-						// default. the frame files are in the same directory
-						atgs.add(member);
-					}
-				}
-			} else { // container (root, folder, project)
-				if (member.getType() == IResource.PROJECT) {
-					if (!isCocoProject((IProject) member)) {
-						continue; // skip projects without Coco nature in the search
-					}
-				}
-				atgs.addAll(Arrays.asList(findDependentAtgs((IContainer) member, framesDir)));
+	public void build(IProgressMonitor monitor) throws CoreException {
+		final List<AtgBuild> builds = new ArrayList<AtgBuild>();
+		for (IResource atg : affectedAtgs) {
+			AtgBuild build = prepareBuild(atg);
+			if (build != null) {
+				builds.add(build);
 			}
 		}
-		return atgs.toArray(new IResource[atgs.size()]);
+		if (builds.isEmpty()) {
+			return;
+		}
+
+		generate(builds, Activator.getDefault().getStateLocation().append(STAGING_DIR).toFile());
+
+		IWorkspace workspace = builds.get(0).resource.getWorkspace();
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (AtgBuild build : builds) {
+					finishBuild(build);
+				}
+			}
+		}, workspace.getRoot(), IWorkspace.AVOID_UPDATE, monitor);
 	}
 
 	/**
-	 * Build ATG only once.
+	 * Runs Coco/R for all given builds. Grammars generating into the same directory
+	 * are processed one after another, all others concurrently.
+	 *
+	 * @param builds The prepared builds.
+	 * @param stagingRoot The directory for the private output of the single runs.
 	 */
-	private void buildAtgOnce(IResource resource) throws CoreException {
-		if (!alreadyBuilt.contains(resource)) {
-			buildAtg(resource);
-			alreadyBuilt.add(resource);
+	private static void generate(List<AtgBuild> builds, final File stagingRoot) {
+		Map<IPath, List<AtgBuild>> groups = new LinkedHashMap<IPath, List<AtgBuild>>();
+		for (AtgBuild build : builds) {
+			List<AtgBuild> group = groups.get(build.outputDirPath);
+			if (group == null) {
+				group = new ArrayList<AtgBuild>();
+				groups.put(build.outputDirPath, group);
+			}
+			group.add(build);
+		}
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(groups.size());
+		for (final List<AtgBuild> group : groups.values()) {
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					for (AtgBuild build : group) {
+						build.generate(stagingRoot);
+					}
+					return null;
+				}
+			});
+		}
+
+		int workers = Math.min(tasks.size(), MAX_WORKERS);
+		if (workers <= 1) {
+			for (AtgBuild build : builds) {
+				build.generate(stagingRoot);
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
 	/**
-	 * Generates the parser and scanner java files using Coco/R.
+	 * Collects the parameters for generating the parser and scanner of an .atg file.
 	 *
 	 * @param resource The ATG file to build.
+	 * @return the prepared build, or <code>null</code> if the generated files are up to date.
 	 * @throws CoreException
 	 */
-	private static void buildAtg(IResource resource) throws CoreException {
-		// delete old problem markers
-		resource.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
-		resource.deleteMarkers(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, false, IResource.DEPTH_ZERO);
-
+	private static AtgBuild prepareBuild(IResource resource) throws CoreException {
 		IPath filePath = resource.getLocation().makeAbsolute();
 		IPath sourceDirPath = filePath.removeLastSegments(1).addTrailingSeparator();
 		IPath outputDirPath = getOutputDirPath(resource, sourceDirPath);
 		IPath framesDirPath = getFramesDirPath(resource, sourceDirPath);
+		String packageName = getPackageName(resource, outputDirPath);
+		String traceStr = getTraceString(resource);
+		GeneratorOptions options = getGeneratorOptions(resource);
+
+		// skip Coco if nothing changed since the last successful run
+		String buildKey = BuildCache.computeKey(filePath, framesDirPath, sourceDirPath,
+				outputDirPath, packageName, traceStr, options);
+		if (BuildCache.isUpToDate(resource, buildKey, outputDirPath)) {
+			setParserProperties(resource, outputDirPath, filePath, null);
+			return null;
+		}
 
 		IContainer[] outputContainers = resource.getWorkspace().getRoot()
 				.findContainersForLocationURI(outputDirPath.toFile().toURI());
-		boolean outputInWorkspace = outputContainers.length != 0; // mapping useful?
-		Mapping mapping = outputInWorkspace ? new Mapping() : null;
+		return new AtgBuild(resource, filePath, outputDirPath, framesDirPath,
+				packageName, traceStr, options, buildKey, outputContainers);
+	}
 
-		// execute Coco
-		List<CocoError> errors = execute(filePath.toOSString(),
-				framesDirPath.toOSString(), outputDirPath.toOSString(),
-				getPackageName(resource, outputDirPath), getTraceString(resource), mapping);
+	/**
+	 * Updates markers, properties and output folders after Coco/R has run.
+	 *
+	 * @param build The generated build.
+	 * @throws CoreException
+	 */
+	private static void finishBuild(AtgBuild build) throws CoreException {
+		IResource resource = build.resource;
+
+		// delete old problem markers
+		resource.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+		if (build.changedFiles.contains(build.outputDirPath.append(CoreUtilities.PARSER_OUTPUT))) {
+			// mapped Java problems are recreated when the Java builder compiles the new parser
+			resource.deleteMarkers(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, false, IResource.DEPTH_ZERO);
+		}
 
 		// create Coco problem markers
-		for (CocoError err : errors) {
+		long start = System.nanoTime();
+		boolean success = true;
+		for (CocoError err : build.errors) {
 			createMarker(err, resource, IMarker.PROBLEM);
+			success &= err.getWarning();
+		}
+		BuildCache.store(resource, success ? build.buildKey : null);
+		if (build.statistics != null) {
+			build.statistics.addSince(BuildStatistics.Phase.MARKERS, start);
+			start = System.nanoTime();
 		}
 
-		// remove backup files
-		removeGeneratedFiles(outputDirPath.toOSString(), CoreUtilities.OLD_SUFFIX);
+		IWorkspaceRoot root = resource.getWorkspace().getRoot();
 
-		// refresh input folder (trace.txt)
-		resource.getParent().refreshLocal(IResource.DEPTH_ONE, null);
+		// refresh trace output
+		refreshFile(root, build.filePath.removeLastSegments(1).append(TRACE_OUTPUT));
 
-		// refresh output folders
-		for (IContainer container : outputContainers) {
-			container.refreshLocal(IResource.DEPTH_ONE, null);
+		// refresh the rewritten files only, unchanged ones keep their time stamp
+		for (IPath changedFile : build.changedFiles) {
+			refreshFile(root, changedFile);
+		}
+		for (IFile file : root.findFilesForLocationURI(build.outputDirPath.append(MappingFile.FILE_NAME).toFile().toURI())) {
+			if (file.exists() && !file.isDerived()) {
+				file.setDerived(true); // keep it out of version control
+			}
+		}
+
+		if (build.statistics != null) {
+			build.statistics.addSince(BuildStatistics.Phase.REFRESH, start);
+			build.statistics.setMetric("errors", build.errors.size());
+			build.statistics.setMetric("changedFiles", build.changedFiles.size());
+			BuildStatisticsLog.log(build.statistics);
 		}
 
 		// set atg file location and mapping properties on the parser output file
+		setParserProperties(resource, build.outputDirPath, build.filePath, build.mapping);
+	}
+
+	/**
+	 * Refreshes the workspace files at the given location.
+	 *
+	 * @param root The workspace root.
+	 * @param location The file system location.
+	 * @throws CoreException
+	 */
+	private static void refreshFile(IWorkspaceRoot root, IPath location) throws CoreException {
+		for (IFile file : root.findFilesForLocationURI(location.toFile().toURI())) {
+			file.refreshLocal(IResource.DEPTH_ZERO, null);
+		}
+	}
+
+	/**
+	 * Sets the atg file location and mapping properties on the parser output file.
+	 *
+	 * @param resource The ATG file.
+	 * @param outputDirPath The output directory.
+	 * @param filePath The location of the ATG file.
+	 * @param mapping The mapping, or <code>null</code> to keep the current one.
+	 * @throws CoreException
+	 */
+	private static void setParserProperties(IResource resource, IPath outputDirPath,
+			IPath filePath, Mapping mapping) throws CoreException {
 		File parserFile = outputDirPath.append(CoreUtilities.PARSER_OUTPUT).toFile();
 		for (IFile file : resource.getWorkspace().getRoot().findFilesForLocationURI(parserFile.toURI())) {
 			if (file.exists()) {
 				file.setSessionProperty(Activator.ATG_FILE_LOCATION, filePath);
-				file.setSessionProperty(Activator.ATG_MAPPING, mapping);
+				if (mapping != null) {
+					file.setSessionProperty(Activator.ATG_MAPPING, mapping);
+				}
 			}
 		}
 	}
@@ -208,6 +528,21 @@ public class CocoBuildVisitor implements IResourceVisitor, IResourceDeltaVisitor
 		return null;
 	}
 
+	/**
+	 * @param resource The resource bearing the properties.
+	 * @return The configured generator options.
+	 */
+	private static GeneratorOptions getGeneratorOptions(IResource resource) {
+		GeneratorOptions options = new GeneratorOptions();
+		try {
+			options.setMinimizeScanner("true".equals(resource.getPersistentProperty(Activator.MINIMIZE_COCO_SCANNER)));
+			options.setMappedScannerInput("true".equals(resource.getPersistentProperty(Activator.MAP_COCO_SCANNER_INPUT)));
+		} catch (CoreException e) {
+			// ignore, use the defaults
+		}
+		return options;
+	}
+
 	/**
 	 * Returns the user configured output directory (if activated in the resource's properties).
 	 *
@@ -239,7 +574,7 @@ public class CocoBuildVisitor implements IResourceVisitor, IResourceDeltaVisitor
 	 * @param defaultFramesDirPath Default path.
 	 * @return Directory path.
 	 */
-	private static IPath getFramesDirPath(IResource resource, IPath defaultFramesDirPath) {
+	static IPath getFramesDirPath(IResource resource, IPath defaultFramesDirPath) {
 		try {
 			String useFramesDir = resource.getPersistentProperty(Activator.USE_CUSTOM_COCO_FRAMES_DIR);
 			String framesDir = resource.getPersistentProperty(Activator.CUSTOM_COCO_FRAMES_DIR);
@@ -308,7 +643,8 @@ public class CocoBuildVisitor implements IResourceVisitor, IResourceDeltaVisitor
 		Assert.isNotNull(resource);
 		IMarker marker = resource.createMarker(type);
 
-		marker.setAttribute(IMarker.SEVERITY, error.getWarning() ? IMarker.SEVERITY_WARNING : IMarker.SEVERITY_ERROR);
+		marker.setAttribute(IMarker.SEVERITY, error.getInfo() ? IMarker.SEVERITY_INFO
+				: error.getWarning() ? IMarker.SEVERITY_WARNING : IMarker.SEVERITY_ERROR);
 		marker.setAttribute(IMarker.MESSAGE, error.getMessage());
 		if (error.getLine() >= 0) {
 			marker.setAttribute(IMarker.LINE_NUMBER, error.getLine());
@@ -328,40 +664,54 @@ public class CocoBuildVisitor implements IResourceVisitor, IResourceDeltaVisitor
 	 * @return a list of <code>CocoError</code>s.
 	 */
 	public static List<CocoError> execute(String atg, String frameDir, String outDir, String namespace, String traceStr, Mapping mapping) {
-		String srcDir = new Path(atg).removeLastSegments(1).addTrailingSeparator().toOSString();
-		return CoreUtilities.executeCoco(atg, srcDir, outDir, frameDir, namespace, traceStr, mapping);
+		return execute(atg, frameDir, outDir, namespace, traceStr, mapping, null);
 	}
 
 	/**
-	 * Removes the generated parser and scanner with the given suffix.
+	 * Executes Coco/R with the given parameters and measures its phases.
 	 *
-	 * @param path The parser and scanner output directory path.
-	 * @param suffix The parser and scanner suffix.
+	 * @param atg        The atg source file name.
+	 * @param outDir     The output directory.
+	 * @param frameDir   The directory containing the frame files.
+	 * @param namespace  The package name for generated classes.
+	 * @param traceStr   Optional trace string.
+	 * @param mapping    Optional mapping information.
+	 * @param statistics Optional build statistics.
+	 * @return a list of <code>CocoError</code>s.
 	 */
-	public static void removeGeneratedFiles(String path, String suffix) {
-		new File(path, CoreUtilities.SCANNER_OUTPUT + suffix).delete();
-		new File(path, CoreUtilities.PARSER_OUTPUT + suffix).delete();
+	public static List<CocoError> execute(String atg, String frameDir, String outDir, String namespace,
+			String traceStr, Mapping mapping, BuildStatistics statistics) {
+		return execute(atg, frameDir, outDir, namespace, traceStr, mapping, statistics, null);
 	}
 
 	/**
-	 * @param resource The resource.
-	 * @return whether the resource appears to be an ATG source file.
+	 * Executes Coco/R with the given parameters and options and measures its phases.
+	 *
+	 * @param atg        The atg source file name.
+	 * @param outDir     The output directory.
+	 * @param frameDir   The directory containing the frame files.
+	 * @param namespace  The package name for generated classes.
+	 * @param traceStr   Optional trace string.
+	 * @param mapping    Optional mapping information.
+	 * @param statistics Optional build statistics.
+	 * @param options    Optional generator options.
+	 * @return a list of <code>CocoError</code>s.
 	 */
-	private static boolean isAtg(IResource resource) {
-		return resource.getType() == IResource.FILE &&
-			CoreUtilities.ATG_EXTENSION.equalsIgnoreCase(resource.getFileExtension());
+	public static List<CocoError> execute(String atg, String frameDir, String outDir, String namespace,
+			String traceStr, Mapping mapping, BuildStatistics statistics, GeneratorOptions options) {
+		String srcDir = new Path(atg).removeLastSegments(1).addTrailingSeparator().toOSString();
+		return CoreUtilities.compileGrammar(atg, srcDir, frameDir, namespace, traceStr, mapping, statistics, options)
+				.write(outDir);
 	}
 
 	/**
-	 * @param project The {@link IProject}.
-	 * @return whether the project is a Coco/R project.
+	 * Removes the generated parser and scanner with the given suffix.
+	 *
+	 * @param path The parser and scanner output directory path.
+	 * @param suffix The parser and scanner suffix.
 	 */
-	private static boolean isCocoProject(IProject project) {
-		try {
-			return project.hasNature(BuilderUtilities.NATURE_ID);
-		} catch (CoreException e) {
-			// Project not open or not accessible
-		}
-		return false;
+	public static void removeGeneratedFiles(String path, String suffix) {
+		new File(path, CoreUtilities.SCANNER_OUTPUT + suffix).delete();
+		new File(path, CoreUtilities.PARSER_OUTPUT + suffix).delete();
 	}
 }
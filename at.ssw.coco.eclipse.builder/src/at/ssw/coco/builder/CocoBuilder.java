@@ -20,6 +20,7 @@ import java.util.Map;
 import org.eclipse.core.resources.ICommand;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.Assert;
@@ -65,7 +66,8 @@ public class CocoBuilder extends IncrementalProjectBuilder {
 	 */
 	protected void fullBuild(IProgressMonitor monitor) throws CoreException {
 		CocoBuildVisitor buildVisitor = new CocoBuildVisitor();
-		getProject().accept(buildVisitor);
+		getProject().accept(buildVisitor, IResource.NONE);
+		buildVisitor.build(monitor);
 	}
 
 	/**
@@ -80,6 +82,7 @@ public class CocoBuilder extends IncrementalProjectBuilder {
 	protected void incrementalBuild(IResourceDelta delta, IProgressMonitor monitor) throws CoreException {
 		CocoBuildVisitor buildVisitor = new CocoBuildVisitor();
 		delta.accept(buildVisitor);
+		buildVisitor.build(monitor);
 	}
 
 	/**
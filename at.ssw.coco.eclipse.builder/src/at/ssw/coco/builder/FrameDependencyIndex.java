@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.builder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.resources.ISavedState;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import at.ssw.coco.core.CoreUtilities;
+
+/**
+ * Maps frame file directories to the .atg files generated from them, so that a
+ * changed Scanner.frame or Parser.frame finds its grammars without walking the
+ * workspace.
+ * <p>
+ * The index follows added, moved and removed .atg files through resource deltas,
+ * and collects or drops the .atg files of a project when it is opened, closed or
+ * removed, or its natures change; changes of the frames directory property must be
+ * reported with
+ * {@link #update(IResource)}. It is saved with the workspace and brought up to date
+ * with the workspace delta of the previous session on startup.
+ */
+public final class FrameDependencyIndex implements IResourceChangeListener, ISaveParticipant {
+	private static final String INDEX_FILE = "frameDependencies";
+
+	private static final String INDEX_VERSION = "1";
+
+	/** .atg file (full path) to the location of its frames directory */
+	private final Map<IPath, IPath> framesDirs = new HashMap<IPath, IPath>();
+
+	/** frames directory location to the .atg files (full paths) depending on it */
+	private final Map<IPath, Set<IPath>> dependents = new HashMap<IPath, Set<IPath>>();
+
+	private final IWorkspaceRoot root;
+
+	private final IPath stateLocation;
+
+	private boolean initialized = false;
+
+	public FrameDependencyIndex(IWorkspaceRoot root, IPath stateLocation) {
+		this.root = root;
+		this.stateLocation = stateLocation;
+	}
+
+	/**
+	 * Restores the index saved in the last session and applies the resource changes
+	 * since then.
+	 *
+	 * @param lastState The state of the last session, or <code>null</code>.
+	 */
+	public void restore(ISavedState lastState) {
+		if (lastState == null) {
+			return;
+		}
+		IPath indexFile = lastState.lookup(new Path(INDEX_FILE));
+		if (indexFile != null && read(stateLocation.append(indexFile).toFile())) {
+			synchronized (this) {
+				initialized = true;
+			}
+			lastState.processResourceChangeEvents(this);
+		}
+	}
+
+	/**
+	 * Search the index for .atg files which depend on the .frame files in <code>framesDir</code>.
+	 *
+	 * @param framesDir The folder which contains the .frame files.
+	 * @return The found resources.
+	 * @throws CoreException
+	 */
+	public synchronized IResource[] getDependentAtgs(IResource framesDir) throws CoreException {
+		ensureInitialized();
+
+		IPath location = framesDir.getLocation();
+		Set<IPath> atgPaths = location != null ? dependents.get(normalize(location)) : null;
+		if (atgPaths == null) {
+			return new IResource[0];
+		}
+
+		List<IResource> atgs = new ArrayList<IResource>(atgPaths.size());
+		for (IPath atgPath : atgPaths) {
+			IResource atg = root.findMember(atgPath);
+			if (atg != null && atg.isAccessible() && isCocoProject(atg.getProject())) {
+				atgs.add(atg);
+			}
+		}
+		return atgs.toArray(new IResource[atgs.size()]);
+	}
+
+	/**
+	 * Updates the frames directory of an .atg file, e.g. after its properties changed.
+	 *
+	 * @param atg The .atg file.
+	 */
+	public synchronized void update(IResource atg) {
+		remove(atg.getFullPath());
+		if (atg.isAccessible()) {
+			IPath framesDir = CocoBuildVisitor.getFramesDirPath(atg, null);
+			if (framesDir == null) {
+				framesDir = atg.getParent().getLocation(); // default: next to the .atg file
+			}
+			if (framesDir != null) {
+				put(atg.getFullPath(), normalize(framesDir));
+			}
+		}
+	}
+
+	/**
+	 * Drops the .atg files of a project from the index and collects them again if
+	 * it is an open Coco project, e.g. after it was opened or its natures changed.
+	 *
+	 * @param project The project.
+	 * @throws CoreException
+	 */
+	public synchronized void updateProject(IProject project) throws CoreException {
+		IPath projectPath = project.getFullPath();
+		for (IPath atgPath : new ArrayList<IPath>(framesDirs.keySet())) {
+			if (projectPath.isPrefixOf(atgPath)) {
+				remove(atgPath);
+			}
+		}
+		if (project.isAccessible() && isCocoProject(project)) {
+			collectAtgs(project);
+		}
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					IResource resource = delta.getResource();
+					if (resource.getType() == IResource.PROJECT) {
+						// an opened project has no child deltas, a changed description may add the nature
+						if (delta.getKind() == IResourceDelta.REMOVED
+								|| (delta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION)) != 0) {
+							updateProject((IProject) resource);
+							return false;
+						}
+						return true;
+					}
+					if (resource.getType() != IResource.FILE) {
+						return true; // visit children
+					}
+					if (CoreUtilities.ATG_EXTENSION.equalsIgnoreCase(resource.getFileExtension())) {
+						if (delta.getKind() == IResourceDelta.REMOVED) {
+							remove(resource.getFullPath());
+						} else if (delta.getKind() == IResourceDelta.ADDED) {
+							update(resource);
+						}
+					}
+					return false;
+				}
+			});
+		} catch (CoreException e) {
+			BuilderUtilities.logError(e.getMessage(), e);
+		}
+	}
+
+	public void prepareToSave(ISaveContext context) throws CoreException {
+		// nothing to do
+	}
+
+	public void saving(ISaveContext context) throws CoreException {
+		if (context.getKind() == ISaveContext.PROJECT_SAVE) {
+			return;
+		}
+		String fileName = INDEX_FILE + "-" + context.getSaveNumber();
+		synchronized (this) {
+			if (!initialized || !write(stateLocation.append(fileName).toFile())) {
+				return; // nothing worth saving, the index is rebuilt on demand
+			}
+		}
+		context.map(new Path(INDEX_FILE), new Path(fileName));
+		context.needSaveNumber();
+		context.needDelta();
+	}
+
+	public void doneSaving(ISaveContext context) {
+		// delete the index of the previous save
+		stateLocation.append(INDEX_FILE + "-" + context.getPreviousSaveNumber()).toFile().delete();
+	}
+
+	public void rollback(ISaveContext context) {
+		// delete the index written in this failed save
+		stateLocation.append(INDEX_FILE + "-" + context.getSaveNumber()).toFile().delete();
+	}
+
+	private void ensureInitialized() throws CoreException {
+		if (!initialized) {
+			framesDirs.clear();
+			dependents.clear();
+			collectAtgs(root);
+			initialized = true;
+		}
+	}
+
+	/**
+	 * Walks the workspace once to fill the index when there is no saved state.
+	 */
+	private void collectAtgs(IContainer container) throws CoreException {
+		for (IResource member : container.members()) {
+			if (!member.isAccessible())
+				continue; // resource does not exist or project not open
+
+			if (member.getType() == IResource.FILE) {
+				if (CoreUtilities.ATG_EXTENSION.equalsIgnoreCase(member.getFileExtension())) {
+					update(member);
+				}
+			} else {
+				if (member.getType() == IResource.PROJECT && !isCocoProject((IProject) member)) {
+					continue; // skip projects without Coco nature
+				}
+				collectAtgs((IContainer) member);
+			}
+		}
+	}
+
+	private void put(IPath atgPath, IPath framesDir) {
+		framesDirs.put(atgPath, framesDir);
+		Set<IPath> atgPaths = dependents.get(framesDir);
+		if (atgPaths == null) {
+			atgPaths = new LinkedHashSet<IPath>();
+			dependents.put(framesDir, atgPaths);
+		}
+		atgPaths.add(atgPath);
+	}
+
+	private synchronized void remove(IPath atgPath) {
+		IPath framesDir = framesDirs.remove(atgPath);
+		if (framesDir != null) {
+			Set<IPath> atgPaths = dependents.get(framesDir);
+			if (atgPaths != null) {
+				atgPaths.remove(atgPath);
+				if (atgPaths.isEmpty()) {
+					dependents.remove(framesDir);
+				}
+			}
+		}
+	}
+
+	private boolean read(File file) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			if (!INDEX_VERSION.equals(reader.readLine())) {
+				return false;
+			}
+			Map<IPath, IPath> entries = new HashMap<IPath, IPath>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) {
+					return false;
+				}
+				entries.put(Path.fromPortableString(line.substring(0, tab)),
+						Path.fromPortableString(line.substring(tab + 1)));
+			}
+			synchronized (this) {
+				framesDirs.clear();
+				dependents.clear();
+				for (Iterator<Map.Entry<IPath, IPath>> it = entries.entrySet().iterator(); it.hasNext();) {
+					Map.Entry<IPath, IPath> entry = it.next();
+					put(entry.getKey(), entry.getValue());
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private boolean write(File file) {
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+			writer.write(INDEX_VERSION);
+			writer.newLine();
+			for (Map.Entry<IPath, IPath> entry : framesDirs.entrySet()) {
+				writer.write(entry.getKey().toPortableString());
+				writer.write('\t');
+				writer.write(entry.getValue().toPortableString());
+				writer.newLine();
+			}
+			return true;
+		} catch (IOException e) {
+			BuilderUtilities.logError(e.getMessage(), e);
+			return false;
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private static IPath normalize(IPath location) {
+		return location.removeTrailingSeparator();
+	}
+
+	private static boolean isCocoProject(IProject project) {
+		try {
+			return project.hasNature(BuilderUtilities.NATURE_ID);
+		} catch (CoreException e) {
+			// Project not open or not accessible
+		}
+		return false;
+	}
+}
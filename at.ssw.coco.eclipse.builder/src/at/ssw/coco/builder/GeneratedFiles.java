@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.builder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Moves files generated by Coco/R from a private staging directory to the output
+ * directory, leaving files with unchanged content untouched so that their time
+ * stamps stay the same and the Java builder does not recompile their dependents.
+ */
+final class GeneratedFiles {
+	private GeneratedFiles() {
+		// private constructor - prevent instantiation of this utility class
+	}
+
+	/**
+	 * Creates a new empty directory for one Coco/R run.
+	 *
+	 * @param parent The directory to create it in.
+	 * @return the staging directory.
+	 * @throws IOException if the directory could not be created.
+	 */
+	public static File createStagingDir(File parent) throws IOException {
+		parent.mkdirs();
+		File dir = File.createTempFile("coco", "", parent);
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Cannot create directory: " + dir.getPath());
+		}
+		return dir;
+	}
+
+	/**
+	 * Replaces <code>target</code> with <code>staged</code> if their contents differ.
+	 *
+	 * @param staged The freshly generated file.
+	 * @param target The file in the output directory.
+	 * @return whether <code>target</code> was written.
+	 * @throws IOException if a file could not be read or written.
+	 */
+	public static boolean publish(File staged, File target) throws IOException {
+		if (!staged.isFile()) {
+			return false; // not generated, e.g. because of errors
+		}
+		byte[] content = read(staged);
+		if (target.isFile() && target.length() == content.length
+				&& Arrays.equals(content, read(target))) {
+			return false;
+		}
+		OutputStream out = new FileOutputStream(target);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Deletes a staging directory and the files in it.
+	 *
+	 * @param dir The staging directory, or <code>null</code>.
+	 */
+	public static void delete(File dir) {
+		if (dir == null) {
+			return;
+		}
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private static byte[] read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] content = new byte[(int) file.length()];
+			int n = 0;
+			while (n < content.length) {
+				int read = in.read(content, n, content.length - n);
+				if (read < 0) {
+					throw new IOException("Unexpected end of file: " + file.getPath());
+				}
+				n += read;
+			}
+			return content;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.builder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import at.ssw.coco.core.Mapping;
+
+/**
+ * Reads and writes the mapping of a generated parser in a binary file next to it,
+ * so that Java problems can be mapped back to the ATG file after a restart.
+ * <p>
+ * The file starts with a magic number, a format version, the length and time stamp
+ * of the parser file it belongs to and the location of the ATG file, followed by the
+ * ranges of the mapping. A file whose parser changed since it was written is ignored.
+ */
+final class MappingFile {
+	/** The file name of the mapping file, next to the generated parser. */
+	public static final String FILE_NAME = "Parser.map";
+
+	private static final int MAGIC = 0x434D4150; // "CMAP"
+
+	private static final int VERSION = 2;
+
+	/** The mapping and ATG file read from a mapping file. */
+	static final class Content {
+		final IPath atgLocation;
+		final Mapping mapping;
+
+		Content(IPath atgLocation, Mapping mapping) {
+			this.atgLocation = atgLocation;
+			this.mapping = mapping;
+		}
+	}
+
+	private MappingFile() {
+		// private constructor - prevent instantiation of this utility class
+	}
+
+	/**
+	 * Writes a mapping file.
+	 *
+	 * @param file The file to write.
+	 * @param parserFile The generated parser the mapping belongs to.
+	 * @param atgLocation The location of the ATG file.
+	 * @param mapping The mapping.
+	 * @throws IOException
+	 */
+	public static void write(File file, File parserFile, IPath atgLocation, Mapping mapping) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(parserFile.length());
+		out.writeLong(parserFile.lastModified());
+		byte[] location = atgLocation.toPortableString().getBytes("UTF-8");
+		out.writeInt(location.length);
+		out.write(location);
+		mapping.write(out);
+		out.close();
+
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			bytes.writeTo(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Reads the mapping file of a generated parser.
+	 *
+	 * @param parserFile The generated parser.
+	 * @return the content, or <code>null</code> if there is no valid, up-to-date mapping file.
+	 */
+	public static Content read(File parserFile) {
+		File file = new File(parserFile.getParentFile(), FILE_NAME);
+		if (!file.isFile() || !parserFile.isFile()) {
+			return null;
+		}
+		try {
+			FileInputStream stream = new FileInputStream(file);
+			try {
+				FileChannel channel = stream.getChannel();
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				return read(buffer, parserFile);
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			return null; // unreadable, the next build writes a new one
+		} catch (BufferUnderflowException e) {
+			return null; // truncated
+		}
+	}
+
+	/**
+	 * Loads the mapping file of a generated parser in the workspace and caches its
+	 * content in the session properties of <code>parser</code>.
+	 *
+	 * @param parser The generated parser.
+	 * @return the content, or <code>null</code> if there is no valid, up-to-date mapping file.
+	 * @throws CoreException
+	 */
+	public static Content load(IResource parser) throws CoreException {
+		IPath location = parser.getLocation();
+		Content content = location != null ? read(location.toFile()) : null;
+		if (content != null) {
+			parser.setSessionProperty(Activator.ATG_FILE_LOCATION, content.atgLocation);
+			parser.setSessionProperty(Activator.ATG_MAPPING, content.mapping);
+		}
+		return content;
+	}
+
+	private static Content read(ByteBuffer buffer, File parserFile) throws IOException {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		if (buffer.getLong() != parserFile.length() || buffer.getLong() != parserFile.lastModified()) {
+			return null; // the parser changed since the mapping was written
+		}
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			return null;
+		}
+		byte[] location = new byte[length];
+		buffer.get(location);
+		Mapping mapping = new Mapping();
+		mapping.read(buffer);
+		return new Content(Path.fromPortableString(new String(location, "UTF-8")), mapping);
+	}
+}
@@ -17,17 +17,25 @@
 package at.ssw.coco.builder;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.IJavaModelMarker;
 
+import at.ssw.coco.core.BuildStatistics;
 import at.ssw.coco.core.CoreUtilities;
 import at.ssw.coco.core.Mapping;
 
@@ -37,11 +45,22 @@ import at.ssw.coco.core.Mapping;
  * source file.
  *
  * The required mapping information is stored by the Coco/R builder as a session
- * property on the generated file.
+ * property on the generated file and, for later sessions, in a mapping file next
+ * to it (see {@link MappingFile}).
+ *
+ * The visitor only computes the remapped markers, {@link #apply(IWorkspace)}
+ * replaces the markers of all affected ATG files in a single workspace operation.
  *
  * @author Andreas Woess <andwoe@users.sf.net>
  */
 final class MarkerMappingVisitor implements IResourceDeltaVisitor {
+	/** ATG file to the attributes of the Java problem markers to create on it */
+	private final Map<IFile, List<Map<String, Object>>> pendingMarkers =
+		new LinkedHashMap<IFile, List<Map<String, Object>>>();
+
+	/** ATG file to its marker mapping statistics, only if timing is enabled */
+	private final Map<IFile, BuildStatistics> statistics = new HashMap<IFile, BuildStatistics>();
+
 	public boolean visit(IResourceDelta delta) throws CoreException {
 		if (delta.getResource().getType() == IResource.FILE) {
 			if (delta.getKind() != IResourceDelta.REMOVED) {
@@ -51,100 +70,127 @@ final class MarkerMappingVisitor implements IResourceDeltaVisitor {
 		return true; // visit children
 	}
 
+	/**
+	 * Replaces the Java problem markers of all ATG files found by this visitor.
+	 *
+	 * @param workspace The workspace.
+	 * @throws CoreException
+	 */
+	public void apply(IWorkspace workspace) throws CoreException {
+		if (pendingMarkers.isEmpty()) {
+			return;
+		}
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (Map.Entry<IFile, List<Map<String, Object>>> entry : pendingMarkers.entrySet()) {
+					long start = System.nanoTime();
+					IFile atgFile = entry.getKey();
+					cleanJavaMarkers(atgFile);
+					for (Map<String, Object> attributes : entry.getValue()) {
+						atgFile.createMarker(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER).setAttributes(attributes);
+					}
+					BuildStatistics stats = statistics.get(atgFile);
+					if (stats != null) {
+						stats.addSince(BuildStatistics.Phase.MARKER_MAPPING, start);
+						BuildStatisticsLog.log(stats);
+					}
+				}
+			}
+		}, null, IWorkspace.AVOID_UPDATE, null);
+		pendingMarkers.clear();
+		statistics.clear();
+	}
+
 	private void processResourceDelta(IResourceDelta delta) throws CoreException {
 		IResource resource = delta.getResource();
 		if (!isParser(resource) || !resource.exists() || delta.getKind() == IResourceDelta.REMOVED)
 			return;
 
+		long start = System.nanoTime();
 		IPath atgFilePath = (IPath) resource.getSessionProperty(Activator.ATG_FILE_LOCATION);
-		if (atgFilePath == null)
-			return;
+		if (atgFilePath == null) {
+			// not built in this session, try the mapping file of the last build
+			MappingFile.Content content = MappingFile.load(resource);
+			if (content == null)
+				return;
+			atgFilePath = content.atgLocation;
+		}
 
 		IFile[] files = resource.getWorkspace().getRoot().findFilesForLocationURI(
 				atgFilePath.toFile().toURI());
+		List<Map<String, Object>> atgmarkers = null;
 		for (IFile atgFile : files) {
 			if (!atgFile.exists()) continue;
 
-			cleanJavaMarkers(atgFile);
-
-			Mapping atgmap = readMapping(resource);
-			if (atgmap == null) {
-				return; // missing or invalid mapping
+			if (atgmarkers == null) {
+				Mapping atgmap = readMapping(resource);
+				if (atgmap == null) {
+					atgmarkers = Collections.emptyList(); // missing or invalid mapping, only clean
+				} else {
+					IMarker[] javamarkers = resource.findMarkers(
+							IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, false, IResource.DEPTH_ZERO);
+					atgmarkers = mapMarkers(javamarkers, atgmap);
+				}
 			}
+			pendingMarkers.put(atgFile, atgmarkers);
 
-			IMarker[] javamarkers = resource.findMarkers(
-					IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, false, IResource.DEPTH_ZERO);
-
-			if (javamarkers.length > 0) {
-				IMarker[] atgmarkers = filterMarkers(javamarkers, atgmap, 0);
-				atgmarkers = createMarkers(atgmarkers, atgFile);
-				shiftMarkers(atgmarkers, atgmap);
+			BuildStatistics stats = BuildStatisticsLog.create(atgFilePath.toOSString());
+			if (stats != null) {
+				stats.addSince(BuildStatistics.Phase.MARKER_MAPPING, start);
+				stats.setMetric("mappedProblems", atgmarkers.size());
+				statistics.put(atgFile, stats);
 			}
 		}
 	}
 
 	private Mapping readMapping(IResource resource) throws CoreException {
-		return (Mapping) resource.getSessionProperty(Activator.ATG_MAPPING);
-	}
-
-	private static IMarker[] filterMarkers(IMarker[] markers, Mapping mapping, int minimumSeverity) throws CoreException {
-		List<IMarker> filtered = new ArrayList<IMarker>();
-		for (IMarker marker : markers) {
-			try {
-				int charStart = ((Integer) marker.getAttribute(IMarker.CHAR_START)).intValue();
-				int charEnd = ((Integer) marker.getAttribute(IMarker.CHAR_END)).intValue();
-				if (minimumSeverity > 0) {
-					int severity = ((Integer) marker.getAttribute(IMarker.SEVERITY)).intValue();
-					if (severity < minimumSeverity) {
-						continue;
-					}
-				}
-				Mapping.Position startpos = mapping.get(charStart);
-				Mapping.Position endpos = mapping.get(charEnd);
-				if (startpos != null && endpos != null && startpos.line == endpos.line) {
-					filtered.add(marker);
-				}
-			} catch (NullPointerException e) { // no such attribute
-			} catch (ClassCastException e) { // not an integer?!
-			}
-		}
-		return filtered.toArray(new IMarker[filtered.size()]);
-	}
-
-	private static IMarker[] createMarkers(IMarker[] markers, IResource resource) throws CoreException {
-		if (markers.length > 0) {
-			for (IMarker marker : markers) {
-				IMarker createdMarker = resource.createMarker(marker.getType());
-				createdMarker.setAttributes(marker.getAttributes());
+		Mapping mapping = (Mapping) resource.getSessionProperty(Activator.ATG_MAPPING);
+		if (mapping == null) {
+			MappingFile.Content content = MappingFile.load(resource);
+			if (content != null) {
+				mapping = content.mapping;
 			}
-			return resource.findMarkers(markers[0].getType(), false, IResource.DEPTH_ZERO);
-		} else {
-			return new IMarker[0];
 		}
+		return mapping;
 	}
 
-	private static void shiftMarkers(IMarker[] markers, Mapping mapping) throws CoreException {
+	/**
+	 * Computes the attributes of the markers to create in the ATG file. Markers
+	 * which do not start and end on the same mapped line are dropped.
+	 *
+	 * @param markers The Java problem markers of the generated parser.
+	 * @param mapping The mapping of the parser to the ATG file.
+	 * @return the attributes of the mapped markers.
+	 * @throws CoreException
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> mapMarkers(IMarker[] markers, Mapping mapping) throws CoreException {
+		int[] charStarts = new int[markers.length];
+		int[] charEnds = new int[markers.length];
 		for (int i = 0; i < markers.length; i++) {
-			try {
-				int charStart = ((Integer) markers[i].getAttribute(IMarker.CHAR_START)).intValue();
-				int charEnd = ((Integer) markers[i].getAttribute(IMarker.CHAR_END)).intValue();
-				int lineNumber = ((Integer) markers[i].getAttribute(IMarker.LINE_NUMBER)).intValue();
-
-				Mapping.Position position = mapping.get(charStart);
+			charStarts[i] = markers[i].getAttribute(IMarker.CHAR_START, -1);
+			charEnds[i] = markers[i].getAttribute(IMarker.CHAR_END, -1);
+		}
 
-				if (position != null) {
-					charEnd = position.offset + (charEnd - charStart);
-					charStart = position.offset;
-					lineNumber = position.line;
-				}
+		int[] startLines = new int[markers.length];
+		int[] startOffsets = new int[markers.length];
+		int[] endLines = new int[markers.length];
+		int[] endOffsets = new int[markers.length];
+		mapping.get(charStarts, startLines, startOffsets);
+		mapping.get(charEnds, endLines, endOffsets);
 
-				markers[i].setAttribute(IMarker.CHAR_START, charStart);
-				markers[i].setAttribute(IMarker.CHAR_END, charEnd);
-				markers[i].setAttribute(IMarker.LINE_NUMBER, lineNumber);
-			} catch (NullPointerException e) { // no such attribute
-			} catch (ClassCastException e) { // not an integer?!
+		List<Map<String, Object>> mapped = new ArrayList<Map<String, Object>>(markers.length);
+		for (int i = 0; i < markers.length; i++) {
+			if (charStarts[i] < 0 || charEnds[i] < 0 || startLines[i] < 0 || startLines[i] != endLines[i]) {
+				continue; // no position or not mapped to a single line
 			}
+			Map<String, Object> attributes = new HashMap<String, Object>(markers[i].getAttributes());
+			attributes.put(IMarker.CHAR_START, Integer.valueOf(startOffsets[i]));
+			attributes.put(IMarker.CHAR_END, Integer.valueOf(startOffsets[i] + (charEnds[i] - charStarts[i])));
+			attributes.put(IMarker.LINE_NUMBER, Integer.valueOf(startLines[i]));
+			mapped.add(attributes);
 		}
+		return mapped;
 	}
 
 	private static boolean isParser(IResource resource) {
@@ -18,6 +18,7 @@ package at.ssw.coco.builder;
 
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 
 /**
@@ -29,7 +30,9 @@ public class PostBuildListener implements IResourceChangeListener {
 	public void resourceChanged(IResourceChangeEvent event) {
 		if (event.getType() == IResourceChangeEvent.POST_BUILD) {
 			try {
-				event.getDelta().accept(new MarkerMappingVisitor());
+				MarkerMappingVisitor visitor = new MarkerMappingVisitor();
+				event.getDelta().accept(visitor);
+				visitor.apply(ResourcesPlugin.getWorkspace());
 			} catch (CoreException e) {
 				e.printStackTrace();
 			}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+
+package at.ssw.coco.builder.internal.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.ssw.coco.builder.Activator;
+import at.ssw.coco.builder.BuilderUtilities;
+import at.ssw.coco.builder.FrameDependencyIndex;
+
+/**
+ * Opens, closes and converts a project with an .atg file in the workspace and
+ * checks that a {@link FrameDependencyIndex} built before finds the .atg file
+ * exactly while the project is an open Coco project. Run as a JUnit plug-in test.
+ */
+public class FrameDependencyIndexTest {
+
+	private IWorkspace workspace;
+
+	private IProject project;
+
+	private IFile atg;
+
+	private FrameDependencyIndex index;
+
+	@Before
+	public void setUp() throws CoreException {
+		workspace = ResourcesPlugin.getWorkspace();
+		project = workspace.getRoot().getProject("frameDependencyIndexTest");
+		project.create(null);
+		project.open(null);
+		atg = project.getFile("Test.atg");
+		atg.create(new ByteArrayInputStream(new byte[0]), true, null);
+		index = new FrameDependencyIndex(workspace.getRoot(), Activator.getDefault().getStateLocation());
+	}
+
+	@After
+	public void tearDown() throws CoreException {
+		workspace.removeResourceChangeListener(index);
+		project.delete(true, true, null);
+	}
+
+	@Test
+	public void testOpenedProject() throws CoreException {
+		addCocoNature();
+		project.close(null);
+		assertDependents(); // built while the project is closed
+		workspace.addResourceChangeListener(index, IResourceChangeEvent.POST_CHANGE);
+
+		project.open(null);
+		assertDependents(atg);
+		project.close(null);
+		assertDependents();
+		project.open(null);
+		assertDependents(atg);
+	}
+
+	@Test
+	public void testAddedNature() throws CoreException {
+		assertDependents(); // built without the Coco nature
+		workspace.addResourceChangeListener(index, IResourceChangeEvent.POST_CHANGE);
+
+		addCocoNature();
+		assertDependents(atg);
+	}
+
+	private void addCocoNature() throws CoreException {
+		IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { BuilderUtilities.NATURE_ID });
+		project.setDescription(description, null);
+	}
+
+	/**
+	 * Checks the .atg files the index finds for the frames in the project folder,
+	 * where they are by default.
+	 */
+	private void assertDependents(IResource... expected) throws CoreException {
+		IResource[] dependents = index.getDependentAtgs(project);
+		assertEquals(expected.length, dependents.length);
+		assertArrayEquals(expected, dependents);
+	}
+}
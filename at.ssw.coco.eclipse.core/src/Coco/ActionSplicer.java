@@ -0,0 +1,552 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.FrameTemplate;
+import at.ssw.coco.core.GeneratorOptions;
+import at.ssw.coco.core.Mapping;
+
+/**
+ * Regenerates the parser of a grammar whose structure did not change since the
+ * last complete Coco/R run, e.g. after editing a semantic action.
+ * <p>
+ * A complete run records which parts of the ATG file were copied where into the
+ * parser: semantic actions, attributes, the imports and the global declarations.
+ * The ATG file is then compared with the recorded one token by token using the
+ * Coco/R scanner. If only the tokens inside these parts differ, the scanner, the
+ * grammar analysis and everything else in the parser are unchanged. The new parser
+ * is the recorded one with the parts copied again from the new ATG file by the same
+ * <code>CopySourcePart</code> code that a complete run uses, which also records the
+ * new mapping. Any other difference requires a complete run.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+final class ActionSplicer {
+	/** the number of grammars whose last run is kept */
+	private static final int CACHE_SIZE = 16;
+
+	private static final Map<String, ActionSplicer> cache = CocoEngine.newCache(CACHE_SIZE); // see CocoEngine
+
+	/** the frame files the generated files depend on */
+	static final String[] FRAMES = { "Parser.frame", "Scanner.frame", "MappedScanner.frame", "Copyright.frame" };
+
+	// how the end of a part is found, depending on the token preceding it
+	private static final int EXACT = 0; // the tokens must not change
+	private static final int SEM_TEXT = 1; // (. ... .)
+	private static final int ATTRIBUTES = 2; // < ... >
+	private static final int ATTRIBUTES2 = 3; // <. ... .>
+	private static final int DECLARATIONS = 4; // COMPILER ident ... CHARACTERS
+	private static final int IMPORTS = 5; // ... COMPILER
+
+	// token kinds of the Coco/R scanner
+	private static final int SEM_BEG, SEM_END, ATTR_BEG, ATTR_END, ATTR2_BEG, ATTR2_END, COMPILER;
+	private static final int[] OUTPUT_ATTR; // ^ out
+	private static final int[] DECL_END;
+
+	static {
+		Tokens t = new Tokens(CharSequenceBuffer.newScanner(
+				"(. .) < > <. .> ^ out COMPILER IGNORECASE CHARACTERS TOKENS PRAGMAS COMMENTS IGNORE PRODUCTIONS"));
+		SEM_BEG = t.kind[0];
+		SEM_END = t.kind[1];
+		ATTR_BEG = t.kind[2];
+		ATTR_END = t.kind[3];
+		ATTR2_BEG = t.kind[4];
+		ATTR2_END = t.kind[5];
+		OUTPUT_ATTR = Arrays.copyOfRange(t.kind, 6, 8);
+		COMPILER = t.kind[8];
+		DECL_END = Arrays.copyOfRange(t.kind, 9, t.size);
+	}
+
+	/** The tokens of an ATG file. */
+	private static final class Tokens {
+		int size = 0;
+		int[] kind = new int[1024];
+		int[] pos = new int[1024];
+		int[] line = new int[1024];
+		int[] col = new int[1024];
+		String[] val = new String[1024];
+
+		Tokens(Scanner scanner) {
+			for (Token t = scanner.Scan(); t.kind != Parser._EOF; t = scanner.Scan()) {
+				if (size == kind.length) {
+					int n = size * 2;
+					kind = Arrays.copyOf(kind, n);
+					pos = Arrays.copyOf(pos, n);
+					line = Arrays.copyOf(line, n);
+					col = Arrays.copyOf(col, n);
+					val = Arrays.copyOf(val, n);
+				}
+				kind[size] = t.kind;
+				pos[size] = t.pos;
+				line[size] = t.line;
+				col[size] = t.col;
+				val[size] = t.val;
+				size++;
+			}
+		}
+
+		/**
+		 * @return the index of the token at <code>p</code>, or <code>-1</code>.
+		 */
+		int indexOf(int p) {
+			int i = Arrays.binarySearch(pos, 0, size, p);
+			return i >= 0 ? i : -1;
+		}
+
+		boolean equals(int i, Tokens other, int j) {
+			return kind[i] == other.kind[j] && val[i].equals(other.val[j]);
+		}
+	}
+
+	/** A source part of the ATG file, copied to the parser once or more. */
+	private static final class Part {
+		/** the index of its first token, or of its end token if it is empty */
+		final int first;
+		/** the index of the token following it */
+		final int end;
+		final int kind;
+		/** its column relative to the column of its first token */
+		final int col;
+
+		Part(int first, int end, int kind, int col) {
+			this.first = first;
+			this.end = end;
+			this.kind = kind;
+			this.col = col;
+		}
+	}
+
+	private final String[] frames;
+
+	private final Tokens tokens;
+
+	/** the source parts in the order of the ATG file */
+	private final Part[] parts;
+
+	/** the source part of each copy, in the order of the parser */
+	private final Part[] copies;
+
+	/** the indentation of each copy */
+	private final int[] indents;
+
+	/** the text of the parser before, between and after the copies */
+	private final String[] gaps;
+
+	/** the length of the recorded parser */
+	private final int parserLength;
+
+	private final String scannerSource;
+
+	private final List<CocoError> warnings;
+
+	/** for each warning the index of the token it refers to, or <code>-1</code> */
+	private final int[] warningTokens;
+
+	private ActionSplicer(String[] frames, Tokens tokens, Part[] parts, Part[] copies, int[] indents,
+			String[] gaps, int parserLength, String scannerSource, List<CocoError> warnings,
+			int[] warningTokens) {
+		this.frames = frames;
+		this.tokens = tokens;
+		this.parts = parts;
+		this.copies = copies;
+		this.indents = indents;
+		this.gaps = gaps;
+		this.parserLength = parserLength;
+		this.scannerSource = scannerSource;
+		this.warnings = warnings;
+		this.warningTokens = warningTokens;
+	}
+
+	/**
+	 * @return the key of a grammar and its generation options in the cache.
+	 */
+	static String key(String kind, String srcName, String srcDir, String frameDir, String nsName,
+			GeneratorOptions options) {
+		return kind + '\n' + srcName + '\n' + srcDir + '\n' + frameDir + '\n' + nsName
+				+ '\n' + (options != null ? options.getKey() : "");
+	}
+
+	/**
+	 * @return the recorded run for <code>key</code>, or <code>null</code>.
+	 */
+	static ActionSplicer get(String key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	/**
+	 * Records a complete run for <code>key</code>, or forgets the previous one
+	 * if <code>splicer</code> is <code>null</code>.
+	 */
+	static void put(String key, ActionSplicer splicer) {
+		synchronized (cache) {
+			if (splicer != null) {
+				cache.put(key, splicer);
+			} else {
+				cache.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Records a complete Coco/R run.
+	 *
+	 * @param atg The content of the ATG file.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param sourceParts The source parts copied by the parser generator.
+	 * @param parserSource The generated parser.
+	 * @param scannerSource The generated scanner, or <code>null</code> if only the parser is needed.
+	 * @param errors The errors and warnings of the run.
+	 * @return the record, or <code>null</code> if the run cannot be used for splicing.
+	 */
+	static ActionSplicer capture(byte[] atg, String srcDir, String frameDir, List<int[]> sourceParts,
+			String parserSource, String scannerSource, List<CocoError> errors) {
+		return capture(new Tokens(new Scanner(new ByteArrayInputStream(atg))), srcDir, frameDir,
+				sourceParts, parserSource, scannerSource, errors);
+	}
+
+	/**
+	 * Records a complete Coco/R run on an ATG text.
+	 *
+	 * @param atg The ATG text, read with a {@link CharSequenceBuffer}.
+	 * @see #capture(byte[], String, String, List, String, String, List)
+	 */
+	static ActionSplicer capture(CharSequence atg, String srcDir, String frameDir, List<int[]> sourceParts,
+			String parserSource, String scannerSource, List<CocoError> errors) {
+		return capture(new Tokens(CharSequenceBuffer.newScanner(atg)), srcDir, frameDir,
+				sourceParts, parserSource, scannerSource, errors);
+	}
+
+	private static ActionSplicer capture(Tokens tokens, String srcDir, String frameDir, List<int[]> sourceParts,
+			String parserSource, String scannerSource, List<CocoError> errors) {
+
+		// warnings refer to tokens or to nothing, errors mean there is no parser
+		int[] warningTokens = new int[errors.size()];
+		for (int i = 0; i < errors.size(); i++) {
+			CocoError error = errors.get(i);
+			if (!error.getWarning()) {
+				return null;
+			}
+			warningTokens[i] = -1;
+			if (error.getLine() >= 0) {
+				for (int t = 0; t < tokens.size && warningTokens[i] < 0; t++) {
+					if (tokens.line[t] == error.getLine() && tokens.col[t] == error.getColumn()) {
+						warningTokens[i] = t;
+					}
+				}
+				if (warningTokens[i] < 0) {
+					return null;
+				}
+			}
+		}
+
+		Map<Integer, Part> partsByPos = new LinkedHashMap<Integer, Part>();
+		Part[] copies = new Part[sourceParts.size()];
+		int[] indents = new int[copies.length];
+		String[] gaps = new String[copies.length + 1];
+		int outPos = 0;
+		for (int i = 0; i < copies.length; i++) {
+			int[] sp = sourceParts.get(i);
+			Part part = partsByPos.get(sp[MappingParserGen.SOURCE_PART_BEG]);
+			if (part == null) {
+				part = createPart(tokens, sp);
+				if (part == null) {
+					return null;
+				}
+				partsByPos.put(sp[MappingParserGen.SOURCE_PART_BEG], part);
+			}
+			copies[i] = part;
+			indents[i] = sp[MappingParserGen.SOURCE_PART_INDENT];
+			int outBeg = sp[MappingParserGen.SOURCE_PART_OUT_BEG];
+			if (outBeg < outPos) {
+				return null;
+			}
+			gaps[i] = parserSource.substring(outPos, outBeg);
+			outPos = sp[MappingParserGen.SOURCE_PART_OUT_END];
+		}
+		if (outPos > parserSource.length()) {
+			return null;
+		}
+		gaps[copies.length] = parserSource.substring(outPos);
+
+		Part[] parts = partsByPos.values().toArray(new Part[partsByPos.size()]);
+		Arrays.sort(parts, new Comparator<Part>() {
+			public int compare(Part a, Part b) {
+				return a.first - b.first;
+			}
+		});
+		for (int i = 1; i < parts.length; i++) {
+			if (parts[i].first <= parts[i - 1].end) {
+				return null; // overlapping or adjacent parts
+			}
+		}
+		return new ActionSplicer(readFrames(srcDir, frameDir), tokens, parts, copies, indents, gaps,
+				parserSource.length(), scannerSource, new ArrayList<CocoError>(errors), warningTokens);
+	}
+
+	private static Part createPart(Tokens tokens, int[] sp) {
+		int beg = sp[MappingParserGen.SOURCE_PART_BEG];
+		int end = sp[MappingParserGen.SOURCE_PART_END];
+		int first = tokens.indexOf(beg);
+		int last = tokens.indexOf(end);
+		if (first < 0 || last < first) {
+			return null;
+		}
+		int kind;
+		if (first == 0) {
+			kind = IMPORTS;
+		} else if (tokens.kind[first - 1] == SEM_BEG) {
+			kind = SEM_TEXT;
+		} else if (tokens.kind[first - 1] == ATTR_BEG) {
+			kind = ATTRIBUTES;
+		} else if (tokens.kind[first - 1] == ATTR2_BEG) {
+			kind = ATTRIBUTES2;
+		} else if (first >= 2 && tokens.kind[first - 2] == COMPILER) {
+			kind = DECLARATIONS;
+		} else {
+			kind = EXACT;
+		}
+		int col = sp[MappingParserGen.SOURCE_PART_COL];
+		if (kind != IMPORTS && kind != DECLARATIONS) {
+			col -= tokens.col[first]; // moves with the first token
+		}
+		return new Part(first, last, kind, col);
+	}
+
+	/**
+	 * Generates the parser for a changed ATG file from the recorded run.
+	 *
+	 * @param atg The new content of the ATG file.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param mapping Receives the mapping of the new parser.
+	 * @return the result, or <code>null</code> if the grammar structure or the frames
+	 *         changed and Coco/R has to run completely.
+	 */
+	Result splice(byte[] atg, String srcDir, String frameDir, Mapping mapping) {
+		if (!Arrays.equals(frames, readFrames(srcDir, frameDir))) {
+			return null;
+		}
+		return splice(new Tokens(new Scanner(new ByteArrayInputStream(atg))),
+				new Scanner(new ByteArrayInputStream(atg)), atg.length, mapping);
+	}
+
+	/**
+	 * Generates the parser for a changed ATG text from the recorded run.
+	 *
+	 * @param atg The new ATG text, read with a {@link CharSequenceBuffer}.
+	 * @see #splice(byte[], String, String, Mapping)
+	 */
+	Result splice(CharSequence atg, String srcDir, String frameDir, Mapping mapping) {
+		if (!Arrays.equals(frames, readFrames(srcDir, frameDir))) {
+			return null;
+		}
+		return splice(new Tokens(CharSequenceBuffer.newScanner(atg)),
+				CharSequenceBuffer.newScanner(atg), atg.length(), mapping);
+	}
+
+	/**
+	 * @param newTokens The tokens of the new ATG file.
+	 * @param scanner A scanner of the new ATG file, for copying the source parts.
+	 * @param length The length of the new ATG file.
+	 */
+	private Result splice(Tokens newTokens, Scanner scanner, int length, Mapping mapping) {
+		int[] newFirst = new int[parts.length];
+		int[] newEnd = new int[parts.length];
+		int[] tokenMap = align(newTokens, newFirst, newEnd);
+		if (tokenMap == null) {
+			return null;
+		}
+
+		List<CocoError> errors = new ArrayList<CocoError>(warnings.size());
+		for (int i = 0; i < warnings.size(); i++) {
+			CocoError warning = warnings.get(i);
+			int t = warningTokens[i];
+			if (t < 0) {
+				errors.add(warning);
+			} else if (tokenMap[t] >= 0) {
+				errors.add(new CocoError(true, newTokens.line[tokenMap[t]], newTokens.col[tokenMap[t]],
+						warning.getMessage()));
+			} else {
+				return null; // the warning refers to a changed part
+			}
+		}
+
+		Parser parser = new Parser(scanner);
+		MappingParserGen pgen = new MappingParserGen(parser, mapping);
+		StringWriter out = new StringWriter(parserLength + length);
+		MappingParserGen.MappingPrintWriter writer = new MappingParserGen.MappingPrintWriter(out);
+		pgen.gen = writer;
+
+		// a part copied twice shares its position, like in a complete run
+		Map<Part, Position> positions = new HashMap<Part, Position>();
+		for (int i = 0; i < parts.length; i++) {
+			Part part = parts[i];
+			int col = part.col;
+			if (part.kind != IMPORTS && part.kind != DECLARATIONS) {
+				col += newTokens.col[newFirst[i]];
+			}
+			positions.put(part, new Position(newTokens.pos[newFirst[i]], newTokens.pos[newEnd[i]], col));
+		}
+		for (int i = 0; i < copies.length; i++) {
+			writer.write(gaps[i]);
+			pgen.CopySourcePart(positions.get(copies[i]), indents[i]);
+		}
+		writer.write(gaps[copies.length]);
+		writer.flush();
+
+		return new Result(out.toString(), scannerSource, errors);
+	}
+
+	/**
+	 * Compares the new tokens with the recorded ones. The tokens outside of
+	 * source parts must be equal; those of source parts may change as long as
+	 * the part ends at the same token. Attributes must not become output
+	 * attributes, since Coco/R turns these into the return value of the
+	 * production and of its calls.
+	 *
+	 * @return the index of each recorded token in <code>newTokens</code>, or
+	 *         <code>null</code> if the structure of the grammar changed.
+	 */
+	private int[] align(Tokens newTokens, int[] newFirst, int[] newEnd) {
+		int[] tokenMap = new int[tokens.size];
+		Arrays.fill(tokenMap, -1);
+		int i = 0, j = 0;
+		for (int p = 0; p < parts.length; p++) {
+			Part part = parts[p];
+			for (; i < part.first; i++, j++) {
+				if (j >= newTokens.size || !tokens.equals(i, newTokens, j)) {
+					return null;
+				}
+				tokenMap[i] = j;
+			}
+			newFirst[p] = j;
+			if (part.kind == EXACT) {
+				for (; i < part.end; i++, j++) {
+					if (j >= newTokens.size || !tokens.equals(i, newTokens, j)) {
+						return null;
+					}
+					tokenMap[i] = j;
+				}
+			} else {
+				if ((part.kind == ATTRIBUTES || part.kind == ATTRIBUTES2) && j < newTokens.size
+						&& contains(OUTPUT_ATTR, newTokens.kind[j])) {
+					return null;
+				}
+				for (; j < newTokens.size && !isEnd(part.kind, newTokens.kind[j]); j++) {
+					if (newTokens.kind[j] == Parser._badString
+							|| (part.kind == SEM_TEXT && newTokens.kind[j] == SEM_BEG)) {
+						return null; // an error in a complete run
+					}
+				}
+				i = part.end;
+			}
+			newEnd[p] = j;
+			if ((newFirst[p] == j) != (part.first == part.end)) {
+				return null; // Coco/R omits empty parts
+			}
+		}
+		for (; i < tokens.size; i++, j++) {
+			if (j >= newTokens.size || !tokens.equals(i, newTokens, j)) {
+				return null;
+			}
+			tokenMap[i] = j;
+		}
+		return j == newTokens.size ? tokenMap : null;
+	}
+
+	private static boolean isEnd(int partKind, int tokenKind) {
+		switch (partKind) {
+		case SEM_TEXT:
+			return tokenKind == SEM_END;
+		case ATTRIBUTES:
+			return tokenKind == ATTR_END;
+		case ATTRIBUTES2:
+			return tokenKind == ATTR2_END;
+		case IMPORTS:
+			return tokenKind == COMPILER;
+		default:
+			return contains(DECL_END, tokenKind);
+		}
+	}
+
+	private static boolean contains(int[] kinds, int kind) {
+		for (int k : kinds) {
+			if (k == kind) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the frames from where Coco/R looks for them: the frame directory,
+	 * or the source directory if it does not exist there.
+	 */
+	private static String[] readFrames(String srcDir, String frameDir) {
+		String[] texts = new String[FRAMES.length];
+		for (int i = 0; i < FRAMES.length; i++) {
+			texts[i] = readFrame(FRAMES[i], srcDir, frameDir);
+		}
+		return texts;
+	}
+
+	/**
+	 * Reads a frame file from the frame directory or, like Coco/R, from the
+	 * source directory if it is not there.
+	 *
+	 * @return the text of the frame, or <code>null</code> if there is none.
+	 */
+	static String readFrame(String name, String srcDir, String frameDir) {
+		File file = frameDir != null ? new File(frameDir, name) : null;
+		if (file == null || !file.exists()) {
+			file = new File(srcDir, name);
+		}
+		try {
+			return file.exists() ? FrameTemplate.get(file).getText() : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/** The outcome of splicing. */
+	static final class Result {
+		final String parserSource;
+		final String scannerSource;
+		final List<CocoError> errors;
+
+		Result(String parserSource, String scannerSource, List<CocoError> errors) {
+			this.parserSource = parserSource;
+			this.scannerSource = scannerSource;
+			this.errors = errors;
+		}
+	}
+}
@@ -16,15 +16,16 @@
  */
 package Coco;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 import at.ssw.coco.core.Mapping.Position;
 
 final class BufferHelper {
-	/** Line start positions */
-	private final List<Integer> linePositions = new ArrayList<Integer>();
+	/** Line start positions, ascending */
+	private int[] linePositions = new int[256];
+
+	/** Number of lines */
+	private int lineCount = 0;
 
 	/**
 	 * Buffer helper, scans the buffer for line starts
@@ -36,35 +37,64 @@ final class BufferHelper {
 		buffer.setPos(0);
 
 		int ch;
-		linePositions.add(buffer.getPos());
+		addLine(buffer.getPos());
 		while ((ch = buffer.Read()) != Buffer.EOF)
 		{
 			if (ch == '\r' && buffer.Peek() != '\n') ch = '\n';
 			if (ch == '\n') {
-				linePositions.add(buffer.getPos());
+				addLine(buffer.getPos());
 			}
 		}
 
 		buffer.setPos(oldPos);
 	}
 
+	private void addLine(int pos) {
+		if (lineCount == linePositions.length) {
+			int[] grown = new int[lineCount * 2];
+			System.arraycopy(linePositions, 0, grown, 0, lineCount);
+			linePositions = grown;
+		}
+		linePositions[lineCount++] = pos;
+	}
+
 	/**
-	 * Convert file position to line and column.
+	 * Convert file position to line number.
 	 *
 	 * @param pos Absolute file position.
-	 * @return Line and column numbers.
+	 * @return Line number [1..
 	 */
-	public Position getLinePosition(int pos)
+	public int getLine(int pos)
 	{
-		int index = Collections.binarySearch(linePositions, pos);
+		int index = Arrays.binarySearch(linePositions, 0, lineCount, pos);
 		if (index < 0) {
 			index = (-index-1)-1;
 			if (index < 0) index = 0;
 		}
+		return index + 1;
+	}
 
+	/**
+	 * @param line Line number [1..
+	 * @return Absolute file position of the first character of <code>line</code>.
+	 */
+	public int getLineStart(int line)
+	{
+		return linePositions[line - 1];
+	}
+
+	/**
+	 * Convert file position to line and column.
+	 *
+	 * @param pos Absolute file position.
+	 * @return Line and column numbers.
+	 */
+	public Position getLinePosition(int pos)
+	{
+		int line = getLine(pos);
 		return new Position(
-				index + 1,
-				pos - linePositions.get(index),
+				line,
+				pos - getLineStart(line),
 				pos);
 	}
 }
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+
+import at.ssw.coco.core.CoreUtilities;
+import at.ssw.coco.core.FrameTemplate;
+
+/**
+ * Extend the Coco/R class <code>ParserGen</code> to copy the parser frame from
+ * the {@link FrameTemplate} cache instead of reading the frame file again.
+ * <p>
+ * <code>WriteParser</code> opens the frame before it calls {@link #initGen(Generator)}
+ * and reads it only afterwards, so the reader of the generator can be replaced there.
+ * Coco/R offers no other way to do this than to set the private fields of
+ * <code>Generator</code>; if they are missing, a warning is logged once and the
+ * frame file is read as before.
+ * <p>
+ * This only saves reading the file. <code>WriteParser</code> creates the
+ * <code>Generator</code> itself, so the generator still looks for the markers in
+ * the whole frame text; only the editor uses the fragments of the template.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class CachedFrameParserGen extends ParserGen {
+	/** the fields of <code>Generator</code> holding the frame, or <code>null</code> if missing */
+	private static final Field FRAME_FILE, FRAM;
+
+	static {
+		Field frameFile = null, fram = null;
+		try {
+			frameFile = Generator.class.getDeclaredField("frameFile");
+			fram = Generator.class.getDeclaredField("fram");
+			frameFile.setAccessible(true);
+			fram.setAccessible(true);
+		} catch (Exception e) {
+			frameFile = fram = null;
+			CoreUtilities.logWarning("This Coco/R version does not allow to use cached parser frames;"
+					+ " the frame files are read on every run", e);
+		}
+		FRAME_FILE = frameFile;
+		FRAM = fram;
+	}
+
+	public CachedFrameParserGen(Parser parser) {
+		super(parser);
+	}
+
+	@Override
+	protected PrintWriter initGen(Generator g) {
+		useCachedFrame(g);
+		return openGen(g);
+	}
+
+	/**
+	 * Opens the output of the parser, by default the file Parser.java in the
+	 * output directory.
+	 *
+	 * @param g The generator of the parser.
+	 * @return the output.
+	 */
+	PrintWriter openGen(Generator g) {
+		return super.initGen(g);
+	}
+
+	/**
+	 * Replaces the frame reader of a generator with a reader on the cached
+	 * template of the same file. The generator keeps reading the file if the
+	 * template is not available.
+	 *
+	 * @param g A generator whose frame was opened but not read yet.
+	 */
+	static void useCachedFrame(Generator g) {
+		if (FRAME_FILE == null) {
+			return;
+		}
+		try {
+			File file = (File) FRAME_FILE.get(g);
+			if (file == null) {
+				return;
+			}
+			FrameTemplate template = FrameTemplate.get(file);
+			Reader old = (Reader) FRAM.get(g);
+			FRAM.set(g, new StringReader(template.getText()));
+			if (old != null) {
+				old.close();
+			}
+		} catch (IOException e) {
+			// unreadable, the generator reports it when reading the file
+		} catch (IllegalAccessException e) {
+			CoreUtilities.logWarning("Cannot use the cached parser frame; the frame file is read", e);
+		}
+	}
+}
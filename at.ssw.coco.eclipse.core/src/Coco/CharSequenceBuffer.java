@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * A buffer of the Coco/R scanner that reads the characters of a text, e.g. the
+ * content of an editor, instead of bytes. The text is neither encoded nor copied,
+ * and positions are character offsets in the text.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+final class CharSequenceBuffer extends Buffer {
+	private final CharSequence text;
+
+	private final int length;
+
+	private int pos = 0;
+
+	CharSequenceBuffer(CharSequence text) {
+		super((InputStream) null);
+		this.text = text;
+		this.length = text.length();
+	}
+
+	/**
+	 * @return a Coco/R scanner reading <code>text</code>.
+	 */
+	static Scanner newScanner(CharSequence text) {
+		Scanner scanner = new Scanner(new ByteArrayInputStream(new byte[0]));
+		scanner.buffer = new CharSequenceBuffer(text);
+		scanner.Init();
+		return scanner;
+	}
+
+	@Override
+	protected void finalize() throws Throwable {
+		// nothing to close
+	}
+
+	@Override
+	protected void Close() {
+		// nothing to close
+	}
+
+	@Override
+	public int Read() {
+		if (pos < length) {
+			return text.charAt(pos++);
+		} else {
+			return EOF;
+		}
+	}
+
+	@Override
+	public int Peek() {
+		return pos < length ? text.charAt(pos) : EOF;
+	}
+
+	@Override
+	public String GetString(int beg, int end) {
+		if (beg < 0 || beg > length) {
+			throw new FatalError("buffer out of bounds access, position: " + beg);
+		}
+		if (end > length) {
+			end = length;
+		}
+		return text.subSequence(beg, end).toString();
+	}
+
+	@Override
+	public int getPos() {
+		return pos;
+	}
+
+	@Override
+	public void setPos(int value) {
+		if (value < 0 || value > length) {
+			throw new FatalError("buffer out of bounds access, position: " + value);
+		}
+		pos = value;
+	}
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.GeneratorOptions;
+
+/**
+ * One run of Coco/R on one grammar.
+ * <p>
+ * All state of the run is confined to the engine: the scanner, parser, symbol
+ * table and generators are created per instance, errors are collected in a list
+ * owned by the engine, the trace is kept in memory instead of the shared file
+ * <code>trace.txt</code> in the source directory, and the progress messages Coco/R
+ * prints on the console are captured per run. Different engines can therefore
+ * run concurrently in one JVM, also for the same grammar.
+ * <p>
+ * Results that outlive a run are kept in the following static caches. Each is
+ * an LRU map bounded by its number of entries and synchronized on itself:
+ * <ul>
+ * <li><code>GrammarCompilation</code>: 16 compilations of unchanged ATG files
+ * without trace, by their arguments, dropped when the ATG file or a frame file
+ * changes. They hold the complete Coco/R run.</li>
+ * <li><code>ActionSplicer</code>: the last complete run of 16 grammars, i.e. their
+ * tokens and generated sources, by input kind, file, directories, package and
+ * options, for splicing edited semantic actions.</li>
+ * <li><code>ReusingDFA</code>: 16 generated scanners, by a fingerprint of the
+ * scanner specification, the terminals, the package, the options and the frames.</li>
+ * <li><code>IncrementalTab</code>: the symbol sets of 16 grammars, by ATG file name.</li>
+ * <li><code>at.ssw.coco.core.FrameTemplate</code>: 32 frame files, by path, reread
+ * when their modification stamp or length changes.</li>
+ * </ul>
+ * <code>System.out</code> is only replaced while a run is in progress, see
+ * <code>ThreadConsole</code>.
+ * <p>
+ * An engine is not thread-safe; it must only be used by one thread at a time.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+public final class CocoEngine {
+	private final Parser parser;
+
+	private final List<CocoError> errors = new ArrayList<CocoError>();
+
+	private final MemoryTrace trace;
+
+	private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+	private GeneratorOptions options;
+
+	private boolean done = false;
+
+	/**
+	 * @param maxSize The number of entries kept.
+	 * @return a new cache that drops the least recently used entry when it is full;
+	 *         it must be synchronized on and be listed in the documentation of this class.
+	 */
+	static <V> Map<String, V> newCache(final int maxSize) {
+		return new LinkedHashMap<String, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Prepares a run on an ATG file.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 * @throws FatalError if the file cannot be opened.
+	 */
+	public CocoEngine(String srcName, String srcDir, String frameDir, String nsName, String traceStr) {
+		this(new Scanner(srcName), srcName, srcDir, frameDir, nsName, traceStr);
+	}
+
+	/**
+	 * Prepares a run on an ATG text, e.g. the unsaved content of an editor.
+	 *
+	 * @param stream The ATG text.
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 */
+	public CocoEngine(InputStream stream, String srcName, String srcDir, String frameDir,
+			String nsName, String traceStr) {
+		this(new Scanner(stream), srcName, srcDir, frameDir, nsName, traceStr);
+	}
+
+	/**
+	 * Prepares a run on the characters of an ATG text, e.g. the content of an editor.
+	 * Positions in errors and in the mapping are character offsets in <code>text</code>.
+	 *
+	 * @param text The ATG text.
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 */
+	public CocoEngine(CharSequence text, String srcName, String srcDir, String frameDir,
+			String nsName, String traceStr) {
+		this(CharSequenceBuffer.newScanner(text), srcName, srcDir, frameDir, nsName, traceStr);
+	}
+
+	private CocoEngine(Scanner scanner, String srcName, String srcDir, String frameDir,
+			String nsName, String traceStr) {
+		parser = new Parser(scanner);
+		parser.errors = new CocoErrors(errors);
+
+		trace = new MemoryTrace(srcDir);
+		parser.trace = trace;
+		parser.tab = new IncrementalTab(parser);
+		parser.dfa = new ReusingDFA(parser);
+		parser.pgen = new CachedFrameParserGen(parser);
+
+		parser.tab.srcName = srcName;
+		parser.tab.srcDir = srcDir;
+		parser.tab.nsName = nsName;
+		parser.tab.frameDir = frameDir;
+		if (traceStr != null) parser.tab.SetDDT(traceStr);
+	}
+
+	/**
+	 * @return the parser of this run.
+	 */
+	public Parser getParser() {
+		return parser;
+	}
+
+	/**
+	 * @return the symbol table of the grammar.
+	 */
+	public Tab getTab() {
+		return parser.tab;
+	}
+
+	/**
+	 * Sets the directory the parser and scanner are written to.
+	 *
+	 * @param outDir The output directory.
+	 */
+	public void setOutDir(String outDir) {
+		parser.tab.outDir = outDir;
+	}
+
+	/**
+	 * Sets the options of generating the parser and scanner.
+	 *
+	 * @param options The options, or <code>null</code> for the defaults.
+	 */
+	public void setOptions(GeneratorOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Replaces the scanner generator. It must have been created for
+	 * {@link #getParser()}, since Coco/R generators copy their collaborators
+	 * from the parser.
+	 */
+	void setDFA(DFA dfa) {
+		parser.dfa = dfa;
+	}
+
+	/**
+	 * Replaces the parser generator. It must have been created for
+	 * {@link #getParser()}, since Coco/R generators copy their collaborators
+	 * from the parser.
+	 */
+	void setParserGen(ParserGen pgen) {
+		parser.pgen = pgen;
+	}
+
+	/**
+	 * Parses and analyses the grammar and, if it is correct, generates the parser
+	 * and scanner. An engine runs at most once.
+	 *
+	 * @return the errors and warnings of the run.
+	 */
+	public List<CocoError> run() {
+		if (done) {
+			throw new IllegalStateException("Coco/R engine has already run");
+		}
+		done = true;
+		if (options != null && parser.dfa instanceof MinimizingDFA) {
+			((MinimizingDFA) parser.dfa).setMinimize(options.isMinimizeScanner());
+		}
+		if (options != null && parser.dfa instanceof ScannerFrameDFA) {
+			((ScannerFrameDFA) parser.dfa).setScannerFrame(options.getScannerFrame());
+		}
+		runCaptured(new Runnable() {
+			public void run() {
+				parser.Parse();
+			}
+		});
+		return errors;
+	}
+
+	/**
+	 * Runs a part of Coco/R, e.g. a deferred generator, on the state of this
+	 * engine. Its console output is captured and a <code>FatalError</code> is
+	 * recorded as error.
+	 *
+	 * @param task The part to run.
+	 * @return whether <code>task</code> completed without a fatal error.
+	 */
+	boolean runCaptured(Runnable task) {
+		OutputStream previous = ThreadConsole.redirect(console);
+		try {
+			task.run();
+			return true;
+		} catch (FatalError ex) {
+			errors.add(new CocoError(false, ex.getMessage()));
+			return false;
+		} finally {
+			trace.Close();
+			ThreadConsole.restore(previous);
+		}
+	}
+
+	/**
+	 * @return the errors and warnings found so far.
+	 */
+	public List<CocoError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the trace output requested by the trace string.
+	 */
+	public String getTrace() {
+		return trace.getText();
+	}
+
+	/**
+	 * @return the messages Coco/R printed on the console.
+	 */
+	public String getConsoleOutput() {
+		return console.toString();
+	}
+}
@@ -60,4 +60,13 @@ public class CocoErrors extends Errors {
 	public void Warning(String s) {
 		errors.add(new CocoError(true, s));
 	}
+
+	/**
+	 * Adds a message that only informs about the run.
+	 *
+	 * @param s The message.
+	 */
+	public void Info(String s) {
+		errors.add(CocoError.info(s));
+	}
 }
@@ -0,0 +1,716 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import at.ssw.coco.core.BuildStatistics;
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.GeneratorOptions;
+import at.ssw.coco.core.Mapping;
+
+/**
+ * The result of scanning, parsing and analysing a grammar once with Coco/R. This
+ * is the entry point for all consumers of a grammar: the builder writes the
+ * generated files with {@link #write(String)}, editor features use the parser
+ * source or the symbol table.
+ * <p>
+ * The parser and scanner sources are generated on demand from the analysed
+ * grammar and cached, so consumers needing the symbol table, the parser or the
+ * scanner of the same grammar can share one instance instead of running Coco/R
+ * several times. Compilations of unchanged ATG files are shared automatically,
+ * see {@link #compile(String, String, String, String, String)}.
+ * <p>
+ * If only semantic actions changed since an earlier compilation of the same
+ * grammar, the parser is spliced from the earlier one (see {@link ActionSplicer})
+ * and Coco/R only runs when the symbol table or a scanner that was not recorded
+ * is asked for.
+ * <p>
+ * A compilation is not immutable: the sources are generated when they are first
+ * asked for, and the symbol table is the one of the Coco/R run, which must not be
+ * modified. The accessors are synchronized, so an instance can be shared between
+ * threads.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+public final class GrammarCompilation {
+	/**
+	 * Parser generator that keeps the parser in memory and postpones writing it
+	 * until it is requested.
+	 */
+	private static final class DeferredParserGen extends MappingParserGen {
+		private final StringWriter out = new StringWriter();
+
+		/** whether Coco/R found the grammar correct and asked for the parser */
+		boolean requested = false;
+
+		DeferredParserGen(Parser parser, Mapping mapping, BuildStatistics statistics) {
+			super(parser, mapping, statistics);
+		}
+
+		@Override
+		public void WriteParser() {
+			requested = true;
+		}
+
+		String generate() {
+			super.WriteParser();
+			return out.toString();
+		}
+
+		@Override
+		PrintWriter openGen(Generator g) {
+			PrintWriter writer = new PrintWriter(out, true);
+			g.OpenGen(writer);
+			return writer;
+		}
+	}
+
+	/**
+	 * Scanner generator that postpones writing the scanner until it is requested.
+	 */
+	private static final class DeferredDFA extends TimingDFA {
+		/** whether Coco/R found the grammar correct and asked for the scanner */
+		boolean requested = false;
+
+		DeferredDFA(Parser parser, BuildStatistics statistics) {
+			super(parser, statistics);
+		}
+
+		@Override
+		public void WriteScanner() {
+			requested = true;
+		}
+
+		void generate() {
+			super.WriteScanner();
+		}
+	}
+
+	/** The ATG input of a compilation. */
+	private static abstract class Source {
+		/** the kind of input in the key of the splicer cache */
+		abstract String kind();
+
+		/** whether the parser can be spliced from an earlier compilation */
+		abstract boolean isSpliceable();
+
+		abstract CocoEngine newEngine(String srcName, String srcDir, String frameDir, String nsName,
+				String traceStr);
+
+		abstract ActionSplicer.Result splice(ActionSplicer splicer, String srcDir, String frameDir,
+				Mapping mapping);
+
+		abstract ActionSplicer capture(String srcDir, String frameDir, List<int[]> sourceParts,
+				String parserSource, String scannerSource, List<CocoError> errors);
+	}
+
+	/** The bytes of an ATG file or stream, or an ATG file Coco/R reads itself. */
+	private static final class ByteSource extends Source {
+		/** the content, or <code>null</code> if Coco/R opens the file itself */
+		private final byte[] atg;
+
+		ByteSource(byte[] atg) {
+			this.atg = atg;
+		}
+
+		@Override
+		String kind() {
+			return "bytes";
+		}
+
+		@Override
+		boolean isSpliceable() {
+			return atg != null;
+		}
+
+		@Override
+		CocoEngine newEngine(String srcName, String srcDir, String frameDir, String nsName, String traceStr) {
+			return atg != null
+					? new CocoEngine(new ByteArrayInputStream(atg), srcName, srcDir, frameDir, nsName, traceStr)
+					: new CocoEngine(srcName, srcDir, frameDir, nsName, traceStr);
+		}
+
+		@Override
+		ActionSplicer.Result splice(ActionSplicer splicer, String srcDir, String frameDir, Mapping mapping) {
+			return splicer.splice(atg, srcDir, frameDir, mapping);
+		}
+
+		@Override
+		ActionSplicer capture(String srcDir, String frameDir, List<int[]> sourceParts,
+				String parserSource, String scannerSource, List<CocoError> errors) {
+			return ActionSplicer.capture(atg, srcDir, frameDir, sourceParts, parserSource, scannerSource, errors);
+		}
+	}
+
+	/** The characters of an ATG text, e.g. of an editor. */
+	private static final class TextSource extends Source {
+		private final String text;
+
+		TextSource(CharSequence text) {
+			this.text = text.toString(); // the text must not change until Coco/R ran
+		}
+
+		@Override
+		String kind() {
+			return "text";
+		}
+
+		@Override
+		boolean isSpliceable() {
+			return true;
+		}
+
+		@Override
+		CocoEngine newEngine(String srcName, String srcDir, String frameDir, String nsName, String traceStr) {
+			return new CocoEngine(text, srcName, srcDir, frameDir, nsName, traceStr);
+		}
+
+		@Override
+		ActionSplicer.Result splice(ActionSplicer splicer, String srcDir, String frameDir, Mapping mapping) {
+			return splicer.splice(text, srcDir, frameDir, mapping);
+		}
+
+		@Override
+		ActionSplicer capture(String srcDir, String frameDir, List<int[]> sourceParts,
+				String parserSource, String scannerSource, List<CocoError> errors) {
+			return ActionSplicer.capture(text, srcDir, frameDir, sourceParts, parserSource, scannerSource, errors);
+		}
+	}
+
+	/** the number of compilations of unchanged files that are shared */
+	private static final int CACHE_SIZE = 16;
+
+	/** shared compilations of files by their arguments */
+	private static final Map<String, GrammarCompilation> files = CocoEngine.newCache(CACHE_SIZE); // see CocoEngine
+
+	private final Source source;
+
+	private final String srcName;
+
+	private final String srcDir;
+
+	private final String frameDir;
+
+	private final String nsName;
+
+	private final String traceStr;
+
+	private final GeneratorOptions options;
+
+	private final BuildStatistics statistics;
+
+	private final Mapping mapping;
+
+	/** the key of the grammar in the splicer cache, or <code>null</code> if it is not spliced */
+	private final String spliceKey;
+
+	/** whether the parser was spliced from an earlier compilation */
+	private final boolean spliced;
+
+	/** the Coco/R run, <code>null</code> if it is not needed so far or could not start */
+	private CocoEngine engine;
+
+	private DeferredParserGen pgen;
+
+	private DeferredDFA dfa;
+
+	/** the errors and warnings, those of the engine unless the parser was spliced */
+	private List<CocoError> errors;
+
+	private boolean valid;
+
+	/** the time stamp of the files a shared compilation was made from */
+	private String stamp;
+
+	private String parserSource;
+
+	private String scannerSource;
+
+	private GrammarCompilation(Source source, String srcName, String srcDir, String frameDir, String nsName,
+			String traceStr, GeneratorOptions options, Mapping mapping, BuildStatistics statistics) {
+		this.source = source;
+		this.srcName = srcName;
+		this.srcDir = srcDir;
+		this.frameDir = frameDir;
+		this.nsName = nsName;
+		this.traceStr = traceStr;
+		this.options = options;
+		this.mapping = mapping != null ? mapping : new Mapping();
+		this.statistics = statistics;
+
+		spliceKey = source.isSpliceable() && (traceStr == null || traceStr.length() == 0)
+				? ActionSplicer.key(source.kind(), srcName, srcDir, frameDir, nsName, options) : null;
+		ActionSplicer.Result result = spliceKey != null ? splice() : null;
+		spliced = result != null;
+		if (spliced) {
+			parserSource = result.parserSource;
+			scannerSource = result.scannerSource;
+			errors = new ArrayList<CocoError>(result.errors);
+			valid = true;
+		} else {
+			errors = new ArrayList<CocoError>();
+			run();
+			if (spliceKey != null && !valid) {
+				ActionSplicer.put(spliceKey, null); // forget the previous run
+			}
+		}
+	}
+
+	/**
+	 * Parses and analyses an ATG file. Compilations without trace string are shared
+	 * by all callers passing the same arguments as long as neither the ATG file nor
+	 * the frame files change.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 * @return the compilation.
+	 */
+	public static GrammarCompilation compile(String srcName, String srcDir,
+			String frameDir, String nsName, String traceStr) {
+		if (traceStr != null && traceStr.length() > 0) {
+			return compile(srcName, srcDir, frameDir, nsName, traceStr, null, null, null);
+		}
+		String key = srcName + '\n' + srcDir + '\n' + frameDir + '\n' + nsName;
+		String stamp = stamp(srcName, srcDir, frameDir); // before reading, a later change makes it stale
+		synchronized (files) {
+			GrammarCompilation compilation = files.get(key);
+			if (compilation != null && compilation.stamp.equals(stamp)) {
+				return compilation;
+			}
+		}
+		GrammarCompilation compilation = compile(srcName, srcDir, frameDir, nsName, null, null, null, null);
+		compilation.stamp = stamp;
+		synchronized (files) {
+			files.put(key, compilation);
+		}
+		return compilation;
+	}
+
+	/**
+	 * Parses and analyses an ATG file for a build. The compilation is not shared.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 * @param options The generator options, or <code>null</code> for the defaults.
+	 * @param mapping Receives the mapping of the parser, or <code>null</code>.
+	 * @param statistics Optionally receives phase times and grammar metrics.
+	 * @return the compilation.
+	 */
+	public static GrammarCompilation compile(String srcName, String srcDir, String frameDir, String nsName,
+			String traceStr, GeneratorOptions options, Mapping mapping, BuildStatistics statistics) {
+		return new GrammarCompilation(new ByteSource(readBytes(new File(srcName))),
+				srcName, srcDir, frameDir, nsName, traceStr, options, mapping, statistics);
+	}
+
+	/**
+	 * Parses and analyses an ATG text, e.g. the unsaved content of an editor.
+	 *
+	 * @param stream The ATG text.
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 * @return the compilation.
+	 * @throws FatalError if the stream cannot be read.
+	 */
+	public static GrammarCompilation compile(InputStream stream, String srcName, String srcDir,
+			String frameDir, String nsName, String traceStr) {
+		byte[] atg;
+		try {
+			atg = readBytes(stream);
+		} catch (IOException e) {
+			throw new FatalError("Cannot read " + srcName + ": " + e.getMessage());
+		}
+		return new GrammarCompilation(new ByteSource(atg),
+				srcName, srcDir, frameDir, nsName, traceStr, null, null, null);
+	}
+
+	/**
+	 * Parses and analyses the characters of an ATG text, e.g. the content of an
+	 * editor. The text is not encoded, so positions of errors and of the mapping are
+	 * offsets in <code>text</code>, and non-ASCII characters in semantic actions are
+	 * copied to the parser unchanged.
+	 *
+	 * @param text The ATG text.
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string, or <code>null</code>.
+	 * @return the compilation.
+	 */
+	public static GrammarCompilation compile(CharSequence text, String srcName, String srcDir,
+			String frameDir, String nsName, String traceStr) {
+		return new GrammarCompilation(new TextSource(text),
+				srcName, srcDir, frameDir, nsName, traceStr, null, null, null);
+	}
+
+	/**
+	 * @return the Coco/R parser of the grammar, or <code>null</code> if the ATG file
+	 *         cannot be read. It must not be modified.
+	 */
+	public synchronized Parser getParser() {
+		if (engine == null && spliced) {
+			run();
+		}
+		return engine != null ? engine.getParser() : null;
+	}
+
+	/**
+	 * @return the symbol table of the grammar, or <code>null</code> if the ATG file
+	 *         cannot be read. It must not be modified.
+	 */
+	public synchronized Tab getTab() {
+		if (engine == null && spliced) {
+			run();
+		}
+		return engine != null ? engine.getTab() : null;
+	}
+
+	/**
+	 * @return the errors found so far, including errors of generating the parser or scanner.
+	 */
+	public synchronized List<CocoError> getErrors() {
+		return Collections.unmodifiableList(new ArrayList<CocoError>(errors));
+	}
+
+	/**
+	 * @return whether the grammar is correct, i.e. parser and scanner can be generated.
+	 */
+	public synchronized boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return the source of the generated parser, or <code>null</code> if the
+	 *         grammar has errors or the parser could not be generated.
+	 */
+	public synchronized String getParserSource() {
+		if (parserSource == null && pgen != null && pgen.requested) {
+			pgen.requested = false; // generate at most once
+			long start = System.nanoTime();
+			runGenerator(new Runnable() {
+				public void run() {
+					parserSource = pgen.generate();
+				}
+			});
+			if (statistics != null) {
+				statistics.addSince(BuildStatistics.Phase.PARSER, start);
+			}
+			capture();
+		}
+		return parserSource;
+	}
+
+	/**
+	 * @return the source parts copied to the parser, or <code>null</code> if there is no parser.
+	 * @see MappingParserGen#getSourceParts()
+	 */
+	synchronized List<int[]> getSourceParts() {
+		return getParserSource() != null && !spliced ? pgen.getSourceParts() : null;
+	}
+
+	/**
+	 * @return the mapping between the generated parser and the ATG file, or
+	 *         <code>null</code> if there is no parser.
+	 */
+	public synchronized Mapping getMapping() {
+		return getParserSource() != null ? mapping : null;
+	}
+
+	/**
+	 * @return the source of the generated scanner, or <code>null</code> if the
+	 *         grammar has errors, declares no scanner or the scanner could not
+	 *         be generated.
+	 */
+	public synchronized String getScannerSource() {
+		if (scannerSource == null && engine == null && spliced) {
+			run(); // the spliced run did not record the scanner
+		}
+		if (scannerSource == null && dfa != null && dfa.requested) {
+			dfa.requested = false; // generate at most once
+			try {
+				scannerSource = generateScanner();
+			} catch (IOException ex) {
+				errors.add(new CocoError(false, "Cannot generate scanner: " + ex.getMessage()));
+			}
+			if (scannerSource != null && parserSource != null) {
+				capture(); // record the scanner too
+			}
+		}
+		return scannerSource;
+	}
+
+	/**
+	 * Writes the generated scanner and parser to a directory, like a complete
+	 * Coco/R run, and the trace output to <code>trace.txt</code> in the source
+	 * directory if the trace string asked for any.
+	 *
+	 * @param outDir The output directory.
+	 * @return the errors and warnings, including those of writing the files.
+	 */
+	public synchronized List<CocoError> write(String outDir) {
+		// the scanner first, so that it is recorded with the parser for splicing
+		String scanner = getScannerSource();
+		String parser = getParserSource();
+		try {
+			if (parser != null) {
+				writeText(new File(outDir, "Parser.java"), parser);
+			}
+			if (scanner != null) {
+				writeText(new File(outDir, "Scanner.java"), scanner);
+			}
+		} catch (IOException e) {
+			errors.add(new CocoError(false, "Cannot write file: " + e.getMessage()));
+		}
+		if (engine != null) {
+			writeTrace();
+		}
+		collectMetrics();
+		return getErrors();
+	}
+
+	/**
+	 * Runs Coco/R on the grammar. The parser and scanner are only generated on request.
+	 */
+	private void run() {
+		try {
+			engine = source.newEngine(srcName, srcDir, frameDir, nsName, traceStr);
+		} catch (FatalError ex) {
+			errors.add(new CocoError(false, ex.getMessage()));
+			return; // the file cannot be read
+		}
+		dfa = new DeferredDFA(engine.getParser(), statistics);
+		engine.setDFA(dfa);
+		pgen = new DeferredParserGen(engine.getParser(), mapping, statistics);
+		engine.setParserGen(pgen);
+		engine.setOptions(options);
+		List<CocoError> result = engine.run();
+		dfa.finish();
+		if (spliced) {
+			pgen.requested = false; // the parser is spliced already
+		} else {
+			errors = result;
+			valid = pgen.requested;
+		}
+	}
+
+	/**
+	 * Generates the parser of a grammar whose structure did not change since an
+	 * earlier compilation from the parser of that compilation.
+	 *
+	 * @return the result, or <code>null</code> if Coco/R has to run.
+	 */
+	private ActionSplicer.Result splice() {
+		ActionSplicer splicer = ActionSplicer.get(spliceKey);
+		if (splicer == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		ActionSplicer.Result result = source.splice(splicer, srcDir, frameDir, mapping);
+		if (result != null && statistics != null) {
+			statistics.addSince(BuildStatistics.Phase.PARSER, start);
+			statistics.setMetric("spliced", 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Records the generated parser, and the scanner if it was generated, for
+	 * splicing later compilations of the grammar.
+	 */
+	private void capture() {
+		if (spliceKey != null && !spliced) {
+			ActionSplicer.put(spliceKey, parserSource == null ? null : source.capture(srcDir, frameDir,
+					pgen.getSourceParts(), parserSource, scannerSource, errors));
+		}
+	}
+
+	/**
+	 * Runs a deferred generator and records its errors.
+	 *
+	 * @return whether <code>task</code> completed without a fatal error.
+	 */
+	private boolean runGenerator(Runnable task) {
+		int count = engine.getErrors().size();
+		boolean completed = engine.runCaptured(task);
+		if (errors != engine.getErrors()) {
+			errors.addAll(engine.getErrors().subList(count, engine.getErrors().size()));
+		}
+		return completed;
+	}
+
+	/**
+	 * Coco/R writes the scanner to a file only, so it is generated into a
+	 * temporary directory and read back.
+	 */
+	private String generateScanner() throws IOException {
+		File dir = File.createTempFile("coco", "");
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Cannot create directory: " + dir.getPath());
+		}
+		File file = new File(dir, "Scanner.java");
+		try {
+			engine.setOutDir(dir.getPath());
+			boolean generated = runGenerator(new Runnable() {
+				public void run() {
+					dfa.generate();
+				}
+			});
+			if (!generated) {
+				return null;
+			}
+			Reader reader = new InputStreamReader(new FileInputStream(file));
+			try {
+				StringBuilder sb = new StringBuilder((int) file.length());
+				char[] buf = new char[8192];
+				int n;
+				while ((n = reader.read(buf)) != -1) {
+					sb.append(buf, 0, n);
+				}
+				return sb.toString();
+			} finally {
+				reader.close();
+			}
+		} finally {
+			engine.setOutDir(null);
+			file.delete();
+			new File(dir, "Scanner.java.old").delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Writes the trace output to <code>trace.txt</code> in the source directory,
+	 * if the trace string asked for any. Compilations of the same grammar
+	 * replace the file one after the other.
+	 */
+	private void writeTrace() {
+		String text = engine.getTrace();
+		if (text.length() == 0) {
+			return;
+		}
+		synchronized (GrammarCompilation.class) {
+			try {
+				writeText(new File(srcDir, "trace.txt"), text);
+			} catch (IOException e) {
+				errors.add(new CocoError(false, "Cannot write trace file: " + e.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * Records the size of the grammar in the statistics.
+	 */
+	private void collectMetrics() {
+		if (statistics == null) {
+			return;
+		}
+		if (engine != null && !spliced) {
+			Tab tab = engine.getTab();
+			statistics.setMetric("terminals", tab.terminals.size());
+			statistics.setMetric("pragmas", tab.pragmas.size());
+			statistics.setMetric("productions", tab.nonterminals.size());
+			statistics.setMetric("nodes", tab.nodes.size());
+			statistics.setMetric("dfaStates", dfa.getStateCount());
+			if (dfa.getStatesBefore() >= 0) {
+				statistics.setMetric("dfaStatesBeforeMinimization", dfa.getStatesBefore());
+			}
+			if (dfa.isReused()) {
+				statistics.setMetric("scannerReused", 1);
+			}
+			if (tab instanceof IncrementalTab && ((IncrementalTab) tab).isIncremental()) {
+				statistics.setMetric("incrementalAnalysis", 1);
+			}
+		}
+		statistics.setMetric("mappingRanges", mapping.size());
+	}
+
+	/**
+	 * @return the time stamps of an ATG file and of the frames it may be generated from.
+	 */
+	private static String stamp(String srcName, String srcDir, String frameDir) {
+		File file = new File(srcName);
+		StringBuilder sb = new StringBuilder();
+		sb.append(file.length()).append(':').append(file.lastModified());
+		for (String frame : ActionSplicer.FRAMES) {
+			sb.append(':').append(new File(frameDir, frame).lastModified());
+			sb.append(':').append(new File(srcDir, frame).lastModified());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the content of <code>file</code>, or <code>null</code> if it cannot be read.
+	 */
+	private static byte[] readBytes(File file) {
+		try {
+			InputStream stream = new FileInputStream(file);
+			try {
+				return readBytes(stream);
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static byte[] readBytes(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = stream.read(buf)) != -1) {
+			bytes.write(buf, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a generated file with the platform encoding, as Coco/R does.
+	 */
+	private static void writeText(File file, String text) throws IOException {
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extend the Coco/R class <code>Tab</code> to compute the deletable symbols and the
+ * first and follow sets from the analysis of an earlier version of the same grammar.
+ * <p>
+ * The graph of every production is compared with the recorded one. The sets of
+ * changed productions are recomputed, and only productions whose sets depend on
+ * a set that actually changed are computed again:
+ * <ul>
+ * <li>deletability and first sets flow from a production to its callers,</li>
+ * <li>follow sets flow from a production to the productions it calls.</li>
+ * </ul>
+ * Everything else keeps the recorded sets. The ANY and SYNC sets and the LL(1)
+ * checks are computed as usual from these sets.
+ * <p>
+ * Propagating changes only yields the least solution if no production can start
+ * with itself, so grammars with left recursion (reported by Coco/R as LL(1)
+ * conflicts) are always analysed completely. The same holds if the terminals or
+ * the start symbol changed or if a trace is written.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class IncrementalTab extends WorklistTab {
+	/** the number of grammars whose analysis is kept */
+	private static final int CACHE_SIZE = 16;
+
+	/** the latest analysis by the ATG file name */
+	private static final Map<String, Analysis> analyses = CocoEngine.newCache(CACHE_SIZE); // see CocoEngine
+
+	/** The sets of a grammar, by nonterminal name. */
+	private static final class Analysis {
+		final String[] terminals;
+		final String startSymbol;
+		final Map<String, Production> productions;
+
+		Analysis(String[] terminals, String startSymbol, Map<String, Production> productions) {
+			this.terminals = terminals;
+			this.startSymbol = startSymbol;
+			this.productions = productions;
+		}
+	}
+
+	/** The graph and the sets of a nonterminal. */
+	private static final class Production {
+		final String structure;
+		final String anySets;
+		final String[] callees;
+		final boolean deletable;
+		final BitSet first;
+		final BitSet follow;
+
+		Production(String structure, String anySets, String[] callees, boolean deletable,
+				BitSet first, BitSet follow) {
+			this.structure = structure;
+			this.anySets = anySets;
+			this.callees = callees;
+			this.deletable = deletable;
+			this.first = first;
+			this.follow = follow;
+		}
+	}
+
+	/** the analysis the sets are derived from, <code>null</code> for a complete analysis */
+	private Analysis previous;
+
+	/** the recorded production of every nonterminal, <code>null</code> if new */
+	private Production[] old;
+
+	/** the structure of every production */
+	private String[] structures;
+
+	/** the ANY sets of every production, computed on demand */
+	private String[] anySets;
+
+	/** productions whose graph changed since the previous analysis, and new ones */
+	private BitSet changed;
+
+	/** nonterminals whose deletability or first set changed */
+	private BitSet setsChanged;
+
+	private boolean incremental = false;
+
+	public IncrementalTab(Parser parser) {
+		super(parser);
+	}
+
+	/**
+	 * @return whether the last analysis reused the sets of an earlier one.
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	@Override
+	public void CompSymbolSets() {
+		boolean tracing = false;
+		for (boolean option : ddt) {
+			tracing |= option;
+		}
+		prepare();
+		synchronized (analyses) {
+			previous = tracing ? null : analyses.get(srcName);
+		}
+		if (previous != null && !fits(previous)) {
+			previous = null;
+		}
+		if (previous != null) {
+			compareWith(previous);
+		}
+
+		super.CompSymbolSets();
+		incremental = previous != null;
+		previous = null;
+
+		if (!tracing) {
+			Analysis analysis = record();
+			synchronized (analyses) {
+				analyses.put(srcName, analysis);
+			}
+		}
+	}
+
+	@Override
+	public void CompDeletableSymbols() {
+		if (previous != null) {
+			int n = nonterminals.size();
+			for (int i = 0; i < n; i++) {
+				Symbol sym = (Symbol) nonterminals.get(i);
+				sym.deletable = old[i] != null && old[i].deletable;
+			}
+			Worklist work = new Worklist(n, changed);
+			for (int i = work.next(); i >= 0; i = work.next()) {
+				Symbol sym = (Symbol) nonterminals.get(i);
+				boolean deletable = sym.graph != null && DelGraph(sym.graph);
+				if (deletable != sym.deletable) {
+					sym.deletable = deletable;
+					work.addAll(callers.get(i));
+				}
+			}
+			if (hasLeftRecursion()) {
+				// the recorded sets may support themselves through the cycle
+				previous = null;
+				for (int i = 0; i < n; i++) {
+					((Symbol) nonterminals.get(i)).deletable = false;
+				}
+			}
+		}
+		// adds nothing if the sets are complete, but reports the deletable symbols
+		super.CompDeletableSymbols();
+	}
+
+	@Override
+	void CompFirstSets() {
+		if (previous == null) {
+			super.CompFirstSets();
+			return;
+		}
+		int n = nonterminals.size();
+		Worklist work = new Worklist(nonterminals.size(), changed);
+		for (int i = 0; i < n; i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			sym.first = old[i] != null ? (BitSet) old[i].first.clone() : new BitSet(terminals.size());
+			sym.firstReady = true;
+			if (old[i] == null || sym.deletable != old[i].deletable) {
+				setsChanged.set(i);
+				work.addAll(callers.get(i));
+			}
+		}
+		for (int i = work.next(); i >= 0; i = work.next()) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			BitSet first = First(sym.graph);
+			if (!first.equals(sym.first)) {
+				sym.first = first;
+				setsChanged.set(i);
+				work.addAll(callers.get(i));
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (old[i] != null && !old[i].first.equals(((Symbol) nonterminals.get(i)).first)) {
+				setsChanged.set(i);
+			}
+		}
+	}
+
+	@Override
+	void CompFollowSets() {
+		if (previous == null) {
+			super.CompFollowSets();
+			return;
+		}
+		int n = nonterminals.size();
+
+		// nonterminals whose direct successors may have changed
+		BitSet dirty = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			boolean direct = changed.get(i) || !old[i].anySets.equals(anySets(i));
+			for (Symbol callee : callees.get(i)) {
+				direct |= setsChanged.get(callee.n);
+			}
+			if (direct) {
+				for (Symbol callee : callees.get(i)) {
+					dirty.set(callee.n);
+				}
+			}
+		}
+		Map<String, Symbol> byName = new HashMap<String, Symbol>();
+		for (int i = 0; i < n; i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			byName.put(sym.name, sym);
+			if (old[i] == null) {
+				dirty.set(i);
+			}
+		}
+		for (Map.Entry<String, Production> entry : previous.productions.entrySet()) {
+			Symbol sym = byName.get(entry.getKey());
+			if (sym == null || changed.get(sym.n)) {
+				// the productions it called lost a caller
+				for (String name : entry.getValue().callees) {
+					Symbol callee = byName.get(name);
+					if (callee != null) {
+						dirty.set(callee.n);
+					}
+				}
+			}
+		}
+		// and everything their follow sets flow into
+		Worklist work = new Worklist(nonterminals.size(), dirty);
+		for (int i = work.next(); i >= 0; i = work.next()) {
+			for (Node p : graphs.get(i)) {
+				if (p.typ == Node.nt && !dirty.get(p.sym.n) && DelGraph(p.next)) {
+					dirty.set(p.sym.n);
+					work.add(p.sym.n);
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			sym.follow = dirty.get(i) ? new BitSet(terminals.size()) : (BitSet) old[i].follow.clone();
+			sym.nts = new BitSet(n);
+		}
+		if (dirty.get(gramSy.n)) {
+			gramSy.follow.set(eofSy.n);
+		}
+		// direct successors of the dirty nonterminals in their callers
+		BitSet walked = new BitSet(n);
+		for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+			for (Symbol caller : callers.get(i)) {
+				if (walked.get(caller.n)) {
+					continue;
+				}
+				walked.set(caller.n);
+				for (Node p : graphs.get(caller.n)) {
+					if (p.typ == Node.nt && dirty.get(p.sym.n)) {
+						p.sym.follow.or(First(p.next));
+						if (DelGraph(p.next)) {
+							p.sym.nts.set(caller.n);
+						}
+					}
+				}
+			}
+		}
+		// indirect successors
+		completeFollowSets(dirty);
+	}
+
+	/**
+	 * Describes the graph of every production.
+	 */
+	private void prepare() {
+		collectGraphs();
+		int n = nonterminals.size();
+		structures = new String[n];
+		anySets = new String[n];
+		int[] index = new int[nodes.size()]; // position of a node in its graph + 1
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			List<Node> graph = graphs.get(i);
+			for (int j = 0; j < graph.size(); j++) {
+				index[graph.get(j).n] = j + 1;
+			}
+
+			// a canonical description of the graph, independent of the node numbers
+			// and of semantic actions
+			sb.setLength(0);
+			for (Node p : graph) {
+				sb.append(p.typ);
+				if (p.typ == Node.t || p.typ == Node.wt || p.typ == Node.nt) {
+					sb.append(' ').append(p.sym.name);
+				}
+				sb.append(p.up ? " ^" : " ");
+				sb.append(p.next != null ? index[p.next.n] : 0).append(',');
+				sb.append(p.down != null ? index[p.down.n] : 0).append(',');
+				sb.append(p.sub != null ? index[p.sub.n] : 0).append(';');
+			}
+			structures[i] = sb.toString();
+		}
+	}
+
+	/**
+	 * @return whether the sets of <code>analysis</code> are indexed like the sets of this grammar.
+	 */
+	private boolean fits(Analysis analysis) {
+		if (!analysis.startSymbol.equals(gramSy.name) || analysis.terminals.length != terminals.size()) {
+			return false;
+		}
+		for (int i = 0; i < analysis.terminals.length; i++) {
+			if (!analysis.terminals[i].equals(((Symbol) terminals.get(i)).name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void compareWith(Analysis analysis) {
+		int n = nonterminals.size();
+		old = new Production[n];
+		changed = new BitSet(n);
+		setsChanged = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			old[i] = analysis.productions.get(((Symbol) nonterminals.get(i)).name);
+			if (old[i] == null || !old[i].structure.equals(structures[i])) {
+				changed.set(i);
+			}
+		}
+	}
+
+	private Analysis record() {
+		String[] names = new String[terminals.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = ((Symbol) terminals.get(i)).name;
+		}
+		Map<String, Production> productions = new HashMap<String, Production>();
+		for (int i = 0; i < nonterminals.size(); i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			List<Symbol> called = callees.get(i);
+			String[] calledNames = new String[called.size()];
+			for (int j = 0; j < calledNames.length; j++) {
+				calledNames[j] = called.get(j).name;
+			}
+			productions.put(sym.name, new Production(structures[i], anySets(i), calledNames,
+					sym.deletable, (BitSet) sym.first.clone(), (BitSet) sym.follow.clone()));
+		}
+		return new Analysis(names, gramSy.name, productions);
+	}
+
+	/**
+	 * @return whether a production can start with itself.
+	 */
+	private boolean hasLeftRecursion() {
+		int n = nonterminals.size();
+		List<List<Symbol>> leading = new ArrayList<List<Symbol>>(n);
+		BitSet mark = new BitSet(nodes.size());
+		for (int i = 0; i < n; i++) {
+			List<Symbol> syms = new ArrayList<Symbol>();
+			mark.clear();
+			leading(((Symbol) nonterminals.get(i)).graph, mark, syms);
+			leading.add(syms);
+		}
+		// depth first search for a back edge
+		int[] state = new int[n]; // 0 = new, 1 = on the path, 2 = done
+		int[] path = new int[n];
+		int[] edge = new int[n];
+		for (int root = 0; root < n; root++) {
+			if (state[root] != 0) {
+				continue;
+			}
+			int depth = 0;
+			path[0] = root;
+			edge[0] = 0;
+			state[root] = 1;
+			while (depth >= 0) {
+				int i = path[depth];
+				List<Symbol> syms = leading.get(i);
+				if (edge[depth] < syms.size()) {
+					int j = syms.get(edge[depth]++).n;
+					if (state[j] == 1) {
+						return true;
+					}
+					if (state[j] == 0) {
+						state[j] = 1;
+						path[++depth] = j;
+						edge[depth] = 0;
+					}
+				} else {
+					state[i] = 2;
+					depth--;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the nonterminals the first set of a node sequence depends on, like <code>First0</code>.
+	 */
+	private void leading(Node p, BitSet mark, List<Symbol> syms) {
+		while (p != null && !mark.get(p.n)) {
+			mark.set(p.n);
+			if (p.typ == Node.nt) {
+				syms.add(p.sym);
+			} else if (p.typ == Node.alt) {
+				leading(p.sub, mark, syms);
+				leading(p.down, mark, syms);
+			} else if (p.typ == Node.iter || p.typ == Node.opt) {
+				leading(p.sub, mark, syms);
+			}
+			if (!DelNode(p)) {
+				break;
+			}
+			p = p.next;
+		}
+	}
+
+	private String anySets(int i) {
+		if (anySets[i] == null) {
+			StringBuilder sb = new StringBuilder();
+			for (Node p : graphs.get(i)) {
+				if (p.typ == Node.any) {
+					sb.append(p.set).append(';');
+				}
+			}
+			anySets[i] = sb.toString();
+		}
+		return anySets[i];
+	}
+}
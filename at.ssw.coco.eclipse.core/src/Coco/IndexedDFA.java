@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extend the Coco/R class <code>DFA</code> to look up melted states in hash tables.
+ * <p>
+ * <code>MakeDeterministic</code> melts the targets of nondeterministic transitions
+ * into new states, each standing for a set of the original states. Coco/R finds the
+ * melted state of a set and the set of a melted state by walking the list of all
+ * melted states, which is quadratic in their number for grammars with many tokens
+ * sharing a prefix. The list is still maintained, so the automaton does not change.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class IndexedDFA extends DFA {
+	/** The melted states by the set of states they stand for; the sets are never modified */
+	private final Map<BitSet, Melted> bySet = new HashMap<BitSet, Melted>();
+
+	/** The melted states by state number, or <code>null</code> if states were renumbered */
+	private Map<Integer, Melted> byNr = new HashMap<Integer, Melted>();
+
+	public IndexedDFA(Parser parser) {
+		super(parser);
+	}
+
+	@Override
+	Melted NewMelted(BitSet set, State state) {
+		Melted m = super.NewMelted(set, state);
+		// Coco/R finds the latest melted state first
+		bySet.put(set, m);
+		if (byNr != null) {
+			byNr.put(Integer.valueOf(state.nr), m);
+		}
+		return m;
+	}
+
+	@Override
+	Melted StateWithSet(BitSet s) {
+		return bySet.get(s);
+	}
+
+	@Override
+	BitSet MeltedSet(int nr) {
+		if (byNr == null) {
+			byNr = new HashMap<Integer, Melted>();
+			for (Melted m = firstMelted; m != null; m = m.next) {
+				Integer key = Integer.valueOf(m.state.nr);
+				if (!byNr.containsKey(key)) {
+					byNr.put(key, m);
+				}
+			}
+		}
+		Melted m = byNr.get(Integer.valueOf(nr));
+		return m != null ? m.set : super.MeltedSet(nr);
+	}
+
+	@Override
+	void DeleteRedundantStates() {
+		super.DeleteRedundantStates();
+		byNr = null; // the remaining states were numbered anew
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extend the Coco/R class <code>Tab</code> to look up character classes in hash tables.
+ * <p>
+ * Coco/R searches the list of character classes linearly. The DFA construction
+ * looks up the set of every transition it shifts to a new character set, comparing
+ * the range lists of all classes, which dominates building the automaton of grammars
+ * with many tokens over large Unicode classes.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class IndexedTab extends Tab {
+	/**
+	 * A character set as hash key. The sets of character classes are never
+	 * modified once the class is created; Coco/R clones them instead.
+	 */
+	private static final class SetKey {
+		private final CharSet set;
+
+		private final int hash;
+
+		SetKey(CharSet set) {
+			this.set = set;
+			int h = 1;
+			for (CharSet.Range r = set.head; r != null; r = r.next) {
+				h = 31 * (31 * h + r.from) + r.to;
+			}
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof SetKey && ((SetKey) obj).hash == hash && ((SetKey) obj).set.Equals(set);
+		}
+	}
+
+	private final Map<String, CharClass> byName = new HashMap<String, CharClass>();
+
+	private final Map<SetKey, CharClass> bySet = new HashMap<SetKey, CharClass>();
+
+	/** The number of classes in the hash tables */
+	private int indexed = 0;
+
+	public IndexedTab(Parser parser) {
+		super(parser);
+	}
+
+	@Override
+	public CharClass NewCharClass(String name, CharSet s) {
+		CharClass c = super.NewCharClass(name, s);
+		index();
+		return c;
+	}
+
+	@Override
+	public CharClass FindCharClass(String name) {
+		index();
+		return byName.get(name);
+	}
+
+	@Override
+	public CharClass FindCharClass(CharSet s) {
+		index();
+		return bySet.get(new SetKey(s));
+	}
+
+	/**
+	 * Adds the classes created since the last call, keeping the first class of
+	 * a name or set like the linear search of Coco/R.
+	 */
+	private void index() {
+		for (; indexed < classes.size(); indexed++) {
+			CharClass c = (CharClass) classes.get(indexed);
+			if (!byName.containsKey(c.name)) {
+				byName.put(c.name, c);
+			}
+			SetKey key = new SetKey(c.set);
+			if (!bySet.containsKey(key)) {
+				bySet.put(key, c);
+			}
+		}
+	}
+}
@@ -19,7 +19,10 @@ package Coco;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
+import at.ssw.coco.core.BuildStatistics;
 import at.ssw.coco.core.Mapping;
 
 /**
@@ -28,7 +31,7 @@ import at.ssw.coco.core.Mapping;
  * 
  * @author Andreas Woess <andwoe@users.sf.net>
  */
-final class MappingParserGen extends ParserGen {
+class MappingParserGen extends CachedFrameParserGen {
 	protected static final class MappingPrintWriter extends PrintWriter {
 		private static final String lineSeparator = System.getProperty(
 				"line.separator", "\n");
@@ -115,10 +118,24 @@ final class MappingParserGen extends ParserGen {
 		}
 	}
 
+	/** indices into the arrays of {@link #getSourceParts()} */
+	static final int SOURCE_PART_BEG = 0, SOURCE_PART_END = 1, SOURCE_PART_COL = 2,
+			SOURCE_PART_INDENT = 3, SOURCE_PART_OUT_BEG = 4, SOURCE_PART_OUT_END = 5;
+
 	private final BufferHelper bufferHelper;
 
 	private final Mapping mapping;
 
+	// current run of characters copied from the atg file to one output line
+	private int runLength = 0;
+	private int runOutLine, runOutColumn, runOutOffset;
+	private int runSrcPos;
+
+	private final BuildStatistics statistics;
+
+	// the source parts copied to the parser, see getSourceParts()
+	private final List<int[]> sourceParts = new ArrayList<int[]>();
+
 	public MappingParserGen(Parser parser) {
 		this(parser, new Mapping());
 	}
@@ -127,9 +144,18 @@ final class MappingParserGen extends ParserGen {
 	 * @see ParserGen#ParserGen(Parser)
 	 */
 	public MappingParserGen(Parser parser, Mapping mapping) {
+		this(parser, mapping, null);
+	}
+
+	/**
+	 * @param statistics Optionally receives the time spent recording the mapping.
+	 * @see ParserGen#ParserGen(Parser)
+	 */
+	public MappingParserGen(Parser parser, Mapping mapping, BuildStatistics statistics) {
 		super(parser);
 		bufferHelper = new BufferHelper(parser.scanner.buffer); // Coco-Plugin
 		this.mapping = mapping;
+		this.statistics = statistics;
 	}
 
 	/**
@@ -140,11 +166,14 @@ final class MappingParserGen extends ParserGen {
 		// Copy text described by pos from atg to gen
 		int ch, i;
 		if (pos != null) {
+			MappingPrintWriter writer = (MappingPrintWriter) gen;
+			int[] part = { pos.beg, pos.end, pos.col, indent, writer.getOffset(), 0 }; // Coco-Plugin
 			buffer.setPos(pos.beg);
 			ch = buffer.Read();
 			Indent(indent);
 			done: while (buffer.getPos() <= pos.end) {
 				while (ch == CR || ch == LF) { // eol is either CR or CRLF or LF
+					addRun(); // Coco-Plugin
 					gen.println();
 					Indent(indent);
 					if (ch == CR) {
@@ -164,14 +193,44 @@ final class MappingParserGen extends ParserGen {
 						break done;
 					}
 				}
-				mapping.add(((MappingPrintWriter) gen).getPosition(),
-						bufferHelper.getLinePosition(buffer.getPos() - 1), 1); // Coco-Plugin
+				// Coco-Plugin: extend the current run of copied characters
+				int srcPos = buffer.getPos() - 1;
+				if (runLength > 0 && srcPos != runSrcPos + runLength) {
+					addRun(); // multi-byte character, positions are not contiguous
+				}
+				if (runLength == 0) {
+					runOutLine = writer.getLine();
+					runOutColumn = writer.getColumn();
+					runOutOffset = writer.getOffset();
+					runSrcPos = srcPos;
+				}
+				runLength++;
 				gen.print((char) ch);
 				ch = buffer.Read();
 			}
+			addRun(); // Coco-Plugin
 			if (indent > 0) {
 				gen.println();
 			}
+			part[SOURCE_PART_OUT_END] = writer.getOffset(); // Coco-Plugin
+			sourceParts.add(part);
+		}
+	}
+
+	/**
+	 * Adds one mapping range for the characters copied to the current output line
+	 * since the last call.
+	 */
+	private void addRun() {
+		if (runLength > 0) {
+			long start = statistics != null ? System.nanoTime() : 0;
+			int srcLine = bufferHelper.getLine(runSrcPos);
+			mapping.add(runOutLine, runOutColumn, runOutOffset,
+					srcLine, runSrcPos - bufferHelper.getLineStart(srcLine), runSrcPos, runLength);
+			runLength = 0;
+			if (statistics != null) {
+				statistics.addSince(BuildStatistics.Phase.MAPPING, start);
+			}
 		}
 	}
 
@@ -180,11 +239,25 @@ final class MappingParserGen extends ParserGen {
 	}
 
 	/**
-	 * @see ParserGen#OpenGen(boolean)
+	 * Returns the source parts copied to the parser in the order of the parser.
+	 * Each part is an array indexed by the <code>SOURCE_PART_</code> constants:
+	 * the position in the ATG file, its column and indentation, and the range of
+	 * the copy in the parser.
+	 */
+	List<int[]> getSourceParts() {
+		return sourceParts;
+	}
+
+	/**
+	 * Counts the output of the generator too, which copies the frame to the
+	 * parser with its own reference to the output.
+	 *
+	 * @see ParserGen#initGen(Generator)
 	 */
 	@Override
-	protected void OnWriteParserInitializationDone() {
-		super.OnWriteParserInitializationDone();
-		gen = new MappingPrintWriter(gen); // Coco-Plugin
+	protected PrintWriter initGen(Generator g) {
+		MappingPrintWriter writer = new MappingPrintWriter(super.initGen(g)); // Coco-Plugin
+		g.OpenGen(writer);
+		return writer;
 	}
 }
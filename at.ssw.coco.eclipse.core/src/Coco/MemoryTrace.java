@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Extends the Coco/R <code>Trace</code> class to keep the trace output in memory
+ * instead of writing it to <code>trace.txt</code> in the source directory, which
+ * would be shared by all runs for the same grammar.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+final class MemoryTrace extends Trace {
+	private final StringWriter text = new StringWriter();
+
+	public MemoryTrace(String srcDir) {
+		super(srcDir);
+		w = new PrintWriter(text); // Trace opens its file only if w is null
+	}
+
+	/**
+	 * Flushes the trace, but does not announce a trace file on the console.
+	 */
+	@Override
+	public void Close() {
+		w.flush();
+	}
+
+	/**
+	 * @return the trace output so far.
+	 */
+	public String getText() {
+		w.flush();
+		return text.toString();
+	}
+}
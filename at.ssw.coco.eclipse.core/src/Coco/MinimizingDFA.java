@@ -0,0 +1,462 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extend the Coco/R class <code>DFA</code> to minimise the scanner automaton before
+ * the scanner is written.
+ * <p>
+ * Coco/R only merges final states without transitions, so tokens with alternatives
+ * or repeated parts leave equivalent states, each one a case in <code>NextToken</code>.
+ * The minimisation merges states that recognise the same token, have the same context
+ * flag and lead to equivalent states with the same kind of transition for every
+ * character (Hopcroft's partition refinement). A missing transition is only
+ * equivalent to a missing transition, since a scanner entering a state consumes
+ * characters even if no token is recognised in the end.
+ * <p>
+ * The productions add their literals to the automaton, so it is only minimised when
+ * the scanner is written.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class MinimizingDFA extends IndexedDFA {
+	private final Tab tab;
+
+	private final Errors errors;
+
+	private boolean minimize = false;
+
+	/** Whether the scanner is being written */
+	private boolean writing = false;
+
+	private int statesBefore = -1;
+
+	private int statesAfter = -1;
+
+	public MinimizingDFA(Parser parser) {
+		super(parser);
+		tab = parser.tab;
+		errors = parser.errors;
+	}
+
+	/**
+	 * @param minimize Whether the automaton is minimised before the scanner is written.
+	 */
+	public void setMinimize(boolean minimize) {
+		this.minimize = minimize;
+	}
+
+	public boolean isMinimize() {
+		return minimize;
+	}
+
+	/**
+	 * @return the number of states before the minimisation, or <code>-1</code> if
+	 *         the automaton was not minimised.
+	 */
+	public int getStatesBefore() {
+		return statesBefore;
+	}
+
+	/**
+	 * @return the number of states after the minimisation, or <code>-1</code> if
+	 *         the automaton was not minimised.
+	 */
+	public int getStatesAfter() {
+		return statesAfter;
+	}
+
+	@Override
+	public void MakeDeterministic() {
+		super.MakeDeterministic();
+		if (writing) {
+			// called by WriteScanner if literals changed the automaton
+			Minimize();
+		}
+	}
+
+	@Override
+	public void WriteScanner() {
+		if (!minimize) {
+			super.WriteScanner();
+			return;
+		}
+		writing = true;
+		try {
+			if (!Boolean.TRUE.equals(get("dirtyDFA"))) {
+				Minimize();
+			}
+			super.WriteScanner();
+		} finally {
+			writing = false;
+		}
+		if (statesBefore >= 0 && errors instanceof CocoErrors) {
+			((CocoErrors) errors).Info("Minimized the scanner automaton from " + statesBefore
+					+ " to " + statesAfter + " states");
+		}
+	}
+
+	/**
+	 * Merges equivalent states. The states keep their order; each group of
+	 * equivalent states is replaced by its first state.
+	 */
+	void Minimize() {
+		State firstState = (State) get("firstState");
+		if (firstState == null) {
+			return; // not available in this Coco/R version
+		}
+		int n = 0;
+		for (State state = firstState; state != null; state = state.next) {
+			if (state.nr != n++) {
+				return; // not numbered by DeleteRedundantStates
+			}
+		}
+		State[] states = new State[n];
+		for (State state = firstState; state != null; state = state.next) {
+			states[state.nr] = state;
+			for (Action a = state.firstAction; a != null; a = a.next) {
+				if (a.target == null || a.target.next != null) {
+					return; // not deterministic
+				}
+			}
+		}
+
+		// the letters are the ranges of characters no transition distinguishes,
+		// twice: for normal and for context transitions
+		IntList points = new IntList();
+		for (State state : states) {
+			for (Action a = state.firstAction; a != null; a = a.next) {
+				for (CharSet.Range r = Ranges(a); r != null; r = r.next) {
+					points.add(r.from);
+					points.add(r.to + 1);
+				}
+			}
+		}
+		int[] bounds = points.toSortedSet();
+
+		// the transitions, state n is the implicit target of missing transitions
+		IntList from = new IntList();
+		IntList letter = new IntList();
+		IntList to = new IntList();
+		for (State state : states) {
+			for (Action a = state.firstAction; a != null; a = a.next) {
+				for (CharSet.Range r = Ranges(a); r != null; r = r.next) {
+					int end = Arrays.binarySearch(bounds, r.to + 1);
+					for (int i = Arrays.binarySearch(bounds, r.from); i < end; i++) {
+						from.add(state.nr);
+						letter.add(2 * i + a.tc);
+						to.add(a.target.state.nr);
+					}
+				}
+			}
+		}
+		int letters = 2 * bounds.length;
+		int[][] byTarget = group(to, letter, from, n + 1);
+		int[][] byLetter = group(letter, from, null, letters);
+
+		// the initial partition by token and context flag; the start state and the
+		// implicit target of missing transitions are never merged
+		Partition p = new Partition(n + 1);
+		Map<List<Object>, Integer> blocks = new HashMap<List<Object>, Integer>();
+		int[] initial = new int[n + 1];
+		for (int i = 1; i < n; i++) {
+			List<Object> key = Arrays.<Object>asList(states[i].endOf, Boolean.valueOf(states[i].ctx));
+			Integer block = blocks.get(key);
+			if (block == null) {
+				block = Integer.valueOf(blocks.size() + 1);
+				blocks.put(key, block);
+			}
+			initial[i] = block.intValue();
+		}
+		initial[n] = blocks.size() + 1;
+		p.init(initial, blocks.size() + 2);
+
+		int[] splitters = new int[n + 1];
+		int count = 0;
+		boolean[] pending = new boolean[n + 1];
+		for (int b = 0; b < p.blocks; b++) {
+			splitters[count++] = b;
+			pending[b] = true;
+		}
+		while (count > 0) {
+			int splitter = splitters[--count];
+			pending[splitter] = false;
+			if (splitter == p.block[n]) {
+				// the missing transitions: split by the states having a transition
+				for (int a = 0; a < letters; a++) {
+					for (int i = byLetter[0][a]; i < byLetter[0][a + 1]; i++) {
+						p.mark(byLetter[1][i]);
+					}
+					count = p.split(splitters, count, pending);
+				}
+				continue;
+			}
+			// the transitions into the splitter, ordered by letter
+			IntList sources = new IntList();
+			for (int i = p.first[splitter]; i < p.end[splitter]; i++) {
+				int q = p.elements[i];
+				for (int t = byTarget[0][q]; t < byTarget[0][q + 1]; t++) {
+					sources.add(byTarget[1][t]); // letter
+					sources.add(byTarget[2][t]); // source
+				}
+			}
+			long[] pairs = new long[sources.size / 2];
+			for (int i = 0; i < pairs.length; i++) {
+				pairs[i] = ((long) sources.values[2 * i] << 32) | sources.values[2 * i + 1];
+			}
+			Arrays.sort(pairs);
+			for (int i = 0; i < pairs.length; i++) {
+				p.mark((int) pairs[i]);
+				if (i + 1 == pairs.length || (pairs[i + 1] >>> 32) != (pairs[i] >>> 32)) {
+					count = p.split(splitters, count, pending);
+				}
+			}
+		}
+		if (p.blocks == n + 1) {
+			statesBefore = n;
+			statesAfter = n;
+			return; // already minimal
+		}
+
+		// replace each state by the first state of its block
+		State[] representative = new State[p.blocks];
+		for (State state : states) {
+			if (representative[p.block[state.nr]] == null) {
+				representative[p.block[state.nr]] = state;
+			}
+		}
+		for (State state : states) {
+			if (representative[p.block[state.nr]] == state) {
+				for (Action a = state.firstAction; a != null; a = a.next) {
+					a.target.state = representative[p.block[a.target.state.nr]];
+				}
+			}
+		}
+		State last = firstState;
+		int nr = 0;
+		for (State state = firstState.next; state != null; state = state.next) {
+			if (representative[p.block[state.nr]] == state) {
+				last.next = state;
+				last = state;
+				state.nr = ++nr;
+			}
+		}
+		last.next = null;
+		set("lastState", last);
+		set("lastStateNr", Integer.valueOf(nr));
+		statesBefore = n;
+		statesAfter = nr + 1;
+
+		// transitions of a state into merged states have the same target now
+		CombineShifts();
+	}
+
+	/**
+	 * @return the character ranges of a transition.
+	 */
+	private CharSet.Range Ranges(Action a) {
+		if (a.typ == Node.clas) {
+			return tab.CharClassSet(a.sym).head;
+		}
+		return new CharSet.Range(a.sym, a.sym);
+	}
+
+	/**
+	 * Groups transitions by their <code>key</code>.
+	 *
+	 * @return the start of each group in the returned arrays, followed by the
+	 *         <code>first</code> and <code>second</code> value of the transitions.
+	 */
+	private static int[][] group(IntList key, IntList first, IntList second, int keys) {
+		int[] start = new int[keys + 1];
+		for (int i = 0; i < key.size; i++) {
+			start[key.values[i] + 1]++;
+		}
+		for (int k = 0; k < keys; k++) {
+			start[k + 1] += start[k];
+		}
+		int[] next = Arrays.copyOf(start, keys);
+		int[] firstValues = new int[key.size];
+		int[] secondValues = second != null ? new int[key.size] : null;
+		for (int i = 0; i < key.size; i++) {
+			int j = next[key.values[i]]++;
+			firstValues[j] = first.values[i];
+			if (second != null) {
+				secondValues[j] = second.values[i];
+			}
+		}
+		return new int[][] { start, firstValues, secondValues };
+	}
+
+	private Object get(String name) {
+		try {
+			Field field = DFA.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field.get(this);
+		} catch (Exception e) {
+			return null; // not available in this Coco/R version
+		}
+	}
+
+	private void set(String name, Object value) {
+		try {
+			Field field = DFA.class.getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(this, value);
+		} catch (Exception e) {
+			throw new FatalError("Cannot minimise the scanner automaton: " + e);
+		}
+	}
+
+	/** A growing array of ints. */
+	private static final class IntList {
+		int[] values = new int[64];
+
+		int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		int[] toSortedSet() {
+			int[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int n = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (n == 0 || sorted[n - 1] != sorted[i]) {
+					sorted[n++] = sorted[i];
+				}
+			}
+			return Arrays.copyOf(sorted, n);
+		}
+	}
+
+	/**
+	 * A partition of the states into blocks. The states of a block are stored
+	 * consecutively; the marked states of a block come first.
+	 */
+	private static final class Partition {
+		final int[] elements;
+
+		/** the index of each state in <code>elements</code> */
+		final int[] location;
+
+		/** the block of each state */
+		final int[] block;
+
+		final int[] first;
+
+		final int[] end;
+
+		/** the end of the marked states of each block */
+		final int[] marked;
+
+		/** the blocks with marked states */
+		final int[] touched;
+
+		int touchedCount = 0;
+
+		int blocks = 0;
+
+		Partition(int size) {
+			elements = new int[size];
+			location = new int[size];
+			block = new int[size];
+			first = new int[size];
+			end = new int[size];
+			marked = new int[size];
+			touched = new int[size];
+		}
+
+		void init(int[] initial, int count) {
+			blocks = count;
+			for (int s = 0; s < initial.length; s++) {
+				end[initial[s]]++;
+			}
+			for (int b = 1; b < count; b++) {
+				end[b] += end[b - 1];
+			}
+			for (int s = initial.length - 1; s >= 0; s--) {
+				int i = --end[initial[s]];
+				elements[i] = s;
+				location[s] = i;
+				block[s] = initial[s];
+			}
+			for (int b = 0; b < count; b++) {
+				first[b] = end[b];
+				end[b] = b + 1 < count ? end[b + 1] : initial.length;
+				marked[b] = first[b];
+			}
+		}
+
+		void mark(int s) {
+			int b = block[s];
+			int i = location[s];
+			if (i < marked[b]) {
+				return;
+			}
+			if (marked[b] == first[b]) {
+				touched[touchedCount++] = b;
+			}
+			int j = marked[b]++;
+			int t = elements[j];
+			elements[j] = s;
+			location[s] = j;
+			elements[i] = t;
+			location[t] = i;
+		}
+
+		/**
+		 * Splits the blocks with marked states and records the splitters to process.
+		 *
+		 * @return the new number of splitters.
+		 */
+		int split(int[] splitters, int count, boolean[] pending) {
+			while (touchedCount > 0) {
+				int b = touched[--touchedCount];
+				if (marked[b] == end[b]) {
+					marked[b] = first[b]; // all states marked
+					continue;
+				}
+				int nb = blocks++;
+				first[nb] = first[b];
+				end[nb] = marked[b];
+				marked[nb] = first[nb];
+				first[b] = marked[b];
+				for (int i = first[nb]; i < end[nb]; i++) {
+					block[elements[i]] = nb;
+				}
+				if (pending[b] || end[nb] - first[nb] <= end[b] - first[b]) {
+					splitters[count++] = nb;
+					pending[nb] = true;
+				} else {
+					splitters[count++] = b;
+					pending[b] = true;
+				}
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Extend the Coco/R class <code>DFA</code> to write the scanner of an earlier run
+ * again instead of generating it, if the scanner specification did not change.
+ * <p>
+ * Most edits of a grammar are in its productions. The scanner only depends on the
+ * scanner specification (the text from the end of the global declarations up to
+ * <code>PRODUCTIONS</code>), the terminals the productions add, the package name,
+ * whether the automaton is minimised and the frame files, including the variant of
+ * the scanner frame. Their fingerprint is compared with the fingerprints of the
+ * scanners generated before.
+ * <p>
+ * The automaton itself is still built while the grammar is parsed, since the
+ * productions match their literals against it and Coco/R reports conflicts there.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class ReusingDFA extends ScannerFrameDFA {
+	/** the number of scanners kept */
+	private static final int CACHE_SIZE = 16;
+
+	/** generated scanners by the fingerprint of their specification */
+	private static final Map<String, String> scanners = CocoEngine.newCache(CACHE_SIZE); // see CocoEngine
+
+	private static final String SCANNER_OUTPUT = "Scanner.java";
+
+	private final Parser parser;
+
+	/** the scanner specification, <code>null</code> until read or if not available */
+	private String specification;
+
+	private boolean specificationRead = false;
+
+	private boolean reused = false;
+
+	public ReusingDFA(Parser parser) {
+		super(parser);
+		this.parser = parser;
+	}
+
+	@Override
+	public void MakeDeterministic() {
+		if (!specificationRead) {
+			// called by the parser after the scanner specification
+			specificationRead = true;
+			specification = readSpecification();
+		}
+		super.MakeDeterministic();
+	}
+
+	@Override
+	public void WriteScanner() {
+		String fingerprint = fingerprint();
+		if (fingerprint != null) {
+			String source;
+			synchronized (scanners) {
+				source = scanners.get(fingerprint);
+			}
+			if (source != null && write(source)) {
+				reused = true;
+				return;
+			}
+		}
+		int errorCount = parser.errors.count;
+		super.WriteScanner();
+		if (fingerprint != null && parser.errors.count == errorCount) {
+			String source = read();
+			if (source != null) {
+				synchronized (scanners) {
+					scanners.put(fingerprint, source);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether the scanner was written again instead of being generated.
+	 */
+	public boolean isReused() {
+		return reused;
+	}
+
+	private String readSpecification() {
+		Position declarations = parser.tab.semDeclPos;
+		Token productions = parser.t;
+		if (declarations == null || productions == null || !"PRODUCTIONS".equals(productions.val)) {
+			return null;
+		}
+		return parser.scanner.buffer.GetString(declarations.end, productions.pos);
+	}
+
+	/**
+	 * @return the fingerprint of everything the scanner depends on, or
+	 *         <code>null</code> if the scanner must be generated.
+	 */
+	private String fingerprint() {
+		Tab tab = parser.tab;
+		if (specification == null) {
+			return null;
+		}
+		for (boolean option : tab.ddt) {
+			if (option) {
+				return null; // the trace shows the automaton
+			}
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			update(digest, specification);
+			for (Object o : tab.terminals) {
+				Symbol sym = (Symbol) o;
+				update(digest, sym.n + " " + sym.tokenKind + " " + sym.name);
+			}
+			update(digest, tab.nsName);
+			update(digest, isMinimize() ? "minimize" : null);
+			update(digest, ActionSplicer.readFrame(getScannerFrame(), tab.srcDir, tab.frameDir));
+			update(digest, ActionSplicer.readFrame("Copyright.frame", tab.srcDir, tab.frameDir));
+
+			StringBuilder sb = new StringBuilder(40);
+			for (byte b : digest.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		} catch (UnsupportedEncodingException e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) throws UnsupportedEncodingException {
+		if (s != null) {
+			digest.update(s.getBytes("UTF-8"));
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Writes the scanner like Coco/R, keeping the previous file as
+	 * <code>Scanner.java.old</code>.
+	 *
+	 * @return whether the scanner was written.
+	 */
+	private boolean write(String source) {
+		File file = new File(parser.tab.outDir, SCANNER_OUTPUT);
+		if (file.exists()) {
+			File old = new File(file.getPath() + ".old");
+			old.delete();
+			file.renameTo(old);
+		}
+		try {
+			Writer writer = new FileWriter(file);
+			try {
+				writer.write(source);
+			} finally {
+				writer.close();
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private String read() {
+		File file = new File(parser.tab.outDir, SCANNER_OUTPUT);
+		try {
+			Reader reader = new FileReader(file);
+			try {
+				StringBuilder sb = new StringBuilder((int) file.length());
+				char[] buf = new char[8192];
+				int n;
+				while ((n = reader.read(buf)) != -1) {
+					sb.append(buf, 0, n);
+				}
+				return sb.toString();
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
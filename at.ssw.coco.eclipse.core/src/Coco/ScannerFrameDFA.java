@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+
+package Coco;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Extend the Coco/R class <code>DFA</code> to write the scanner with a variant of
+ * the scanner frame, e.g. <code>MappedScanner.frame</code>, instead of
+ * <code>Scanner.frame</code>.
+ * <p>
+ * Coco/R always opens <code>Scanner.frame</code> in the frame directory, or in the
+ * source directory if it is not there. The variant is looked up the same way and
+ * copied as <code>Scanner.frame</code> into a temporary frame directory while the
+ * scanner is written. The copyright frame is copied along with it, so it is still
+ * found in the frame directory first.
+ * <p>
+ * Coco/R assigns the token text before every <code>CheckLiteral()</code> call it
+ * generates. If <code>CheckLiteral</code> of the frame assigns it itself, the
+ * generated assignments are removed, so that <code>Scanner.ScanAll()</code> does
+ * not create a string for every keyword.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class ScannerFrameDFA extends MinimizingDFA {
+	static final String SCANNER_FRAME = "Scanner.frame";
+
+	private static final String COPYRIGHT_FRAME = "Copyright.frame";
+
+	private static final String SCANNER_OUTPUT = "Scanner.java";
+
+	/** the statement Coco/R generates for tokens that may be literals */
+	private static final String CHECK_LITERAL = "t.val = new String(tval, 0, tlen); CheckLiteral();";
+
+	/** the assignment of the token text in <code>CheckLiteral</code> of the frames */
+	private static final String LITERAL_VAL = "if (t.val == null && scratch == null) t.val = new String(tval, 0, tlen);";
+
+	private final Tab tab;
+
+	private String scannerFrame = SCANNER_FRAME;
+
+	public ScannerFrameDFA(Parser parser) {
+		super(parser);
+		tab = parser.tab;
+	}
+
+	/**
+	 * @param scannerFrame The name of the scanner frame, or <code>null</code> for
+	 *        <code>Scanner.frame</code>.
+	 */
+	public void setScannerFrame(String scannerFrame) {
+		this.scannerFrame = scannerFrame != null ? scannerFrame : SCANNER_FRAME;
+	}
+
+	public String getScannerFrame() {
+		return scannerFrame;
+	}
+
+	@Override
+	public void WriteScanner() {
+		if (SCANNER_FRAME.equals(scannerFrame)) {
+			super.WriteScanner();
+			removeLiteralVals();
+			return;
+		}
+		File variant = findFrame(scannerFrame);
+		if (variant == null) {
+			throw new FatalError("Cannot find " + scannerFrame);
+		}
+		String frameDir = tab.frameDir;
+		File dir = null;
+		try {
+			dir = File.createTempFile("coco", "");
+			if (!dir.delete() || !dir.mkdir()) {
+				throw new FatalError("Cannot create directory: " + dir.getPath());
+			}
+			copy(variant, new File(dir, SCANNER_FRAME));
+			File copyright = frameDir != null ? new File(frameDir, COPYRIGHT_FRAME) : null;
+			if (copyright != null && copyright.exists()) {
+				copy(copyright, new File(dir, COPYRIGHT_FRAME));
+			}
+			tab.frameDir = dir.getPath();
+			super.WriteScanner();
+		} catch (IOException e) {
+			throw new FatalError("Cannot open " + scannerFrame + ": " + e.getMessage());
+		} finally {
+			tab.frameDir = frameDir;
+			if (dir != null) {
+				new File(dir, SCANNER_FRAME).delete();
+				new File(dir, COPYRIGHT_FRAME).delete();
+				dir.delete();
+			}
+		}
+		removeLiteralVals();
+	}
+
+	/**
+	 * Removes the generated assignments of the token text before <code>CheckLiteral()</code>
+	 * from the scanner, if <code>CheckLiteral</code> assigns it itself.
+	 */
+	private void removeLiteralVals() {
+		File file = new File(tab.outDir, SCANNER_OUTPUT);
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			StringBuilder sb = new StringBuilder((int) file.length());
+			Reader reader = new FileReader(file);
+			try {
+				char[] buf = new char[8192];
+				int n;
+				while ((n = reader.read(buf)) != -1) {
+					sb.append(buf, 0, n);
+				}
+			} finally {
+				reader.close();
+			}
+			String source = sb.toString();
+			if (!source.contains(LITERAL_VAL) || !source.contains(CHECK_LITERAL)) {
+				return;
+			}
+			Writer writer = new FileWriter(file);
+			try {
+				writer.write(source.replace(CHECK_LITERAL, "CheckLiteral();"));
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new FatalError("Cannot write " + SCANNER_OUTPUT + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the frame file in the frame directory or, like Coco/R, in the source
+	 *         directory, or <code>null</code> if there is none.
+	 */
+	private File findFrame(String name) {
+		File file = tab.frameDir != null ? new File(tab.frameDir, name) : null;
+		if (file == null || !file.exists()) {
+			file = new File(tab.srcDir, name);
+		}
+		return file.exists() ? file : null;
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) != -1) {
+					out.write(buf, 0, n);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
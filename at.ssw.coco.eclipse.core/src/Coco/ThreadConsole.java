@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Replacement for <code>System.out</code> which sends the output of the calling
+ * thread to a thread local sink while Coco/R runs on it, and everything else to
+ * the original stream. Coco/R reports its progress on <code>System.out</code>;
+ * this keeps concurrent runs from writing to the shared console.
+ * <p>
+ * The stream is only installed while output is redirected: the first redirection
+ * installs it and the last restoration puts the original stream back, unless
+ * <code>System.out</code> was replaced by someone else in the meantime.
+ */
+final class ThreadConsole extends PrintStream {
+	private static final ThreadLocal<OutputStream> sink = new ThreadLocal<OutputStream>();
+
+	/** the installed stream, or <code>null</code> */
+	private static ThreadConsole installed;
+
+	/** the number of redirections not restored yet */
+	private static int redirections = 0;
+
+	private final PrintStream original;
+
+	private ThreadConsole(PrintStream original) {
+		super(original, true);
+		this.original = original;
+	}
+
+	/**
+	 * Sends the console output of the current thread to <code>out</code> until
+	 * {@link #restore(OutputStream)} is called, which must follow in a
+	 * <code>finally</code> block.
+	 *
+	 * @param out The sink for the output.
+	 * @return the previous sink of the current thread, to be passed to {@link #restore(OutputStream)}.
+	 */
+	public static OutputStream redirect(OutputStream out) {
+		synchronized (ThreadConsole.class) {
+			if (redirections++ == 0) {
+				installed = new ThreadConsole(System.out);
+				System.setOut(installed);
+			}
+		}
+		OutputStream previous = sink.get();
+		sink.set(out);
+		return previous;
+	}
+
+	/**
+	 * @param previous The value returned by {@link #redirect(OutputStream)}.
+	 */
+	public static void restore(OutputStream previous) {
+		if (previous == null) {
+			sink.remove();
+		} else {
+			sink.set(previous);
+		}
+		synchronized (ThreadConsole.class) {
+			if (--redirections == 0) {
+				if (System.out == installed) {
+					System.setOut(installed.original);
+				}
+				installed = null;
+			}
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		OutputStream out = sink.get();
+		if (out == null) {
+			original.write(b);
+			return;
+		}
+		try {
+			out.write(b);
+		} catch (IOException e) {
+			setError();
+		}
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) {
+		OutputStream out = sink.get();
+		if (out == null) {
+			original.write(buf, off, len);
+			return;
+		}
+		try {
+			out.write(buf, off, len);
+		} catch (IOException e) {
+			setError();
+		}
+	}
+
+	@Override
+	public void flush() {
+		if (sink.get() == null) {
+			original.flush();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.lang.reflect.Field;
+
+import at.ssw.coco.core.BuildStatistics;
+import at.ssw.coco.core.BuildStatistics.Phase;
+
+/**
+ * Extend the Coco/R class <code>DFA</code> to measure the phases of a Coco/R run.
+ * <p>
+ * <code>Parser.Parse()</code> runs all phases in one go; the DFA is called at the
+ * boundaries between them: <code>MakeDeterministic</code> ends the parse phase and
+ * <code>WriteScanner</code> is called after the grammar analysis and the parser.
+ */
+class TimingDFA extends ReusingDFA {
+	/** Receives the phase times, or <code>null</code> if they are not measured */
+	private final BuildStatistics statistics;
+
+	/** The running phase, or <code>null</code> when done */
+	private Phase current = Phase.PARSE;
+
+	/** The start of the running phase */
+	private long mark;
+
+	public TimingDFA(Parser parser, BuildStatistics statistics) {
+		super(parser);
+		this.statistics = statistics;
+		this.mark = System.nanoTime();
+	}
+
+	@Override
+	public void MakeDeterministic() {
+		if (current != Phase.PARSE) {
+			// called again by WriteScanner if literals changed the automaton
+			super.MakeDeterministic();
+			return;
+		}
+		next(Phase.DFA);
+		super.MakeDeterministic();
+		next(Phase.PARSER);
+	}
+
+	@Override
+	public void WriteScanner() {
+		next(Phase.SCANNER);
+		super.WriteScanner();
+		next(null);
+	}
+
+	/**
+	 * Ends the running phase, e.g. after Coco/R stopped because of errors.
+	 */
+	public void finish() {
+		next(null);
+	}
+
+	/**
+	 * @return the number of states of the scanner automaton, or <code>-1</code> if unknown.
+	 */
+	public int getStateCount() {
+		try {
+			Field lastStateNr = DFA.class.getDeclaredField("lastStateNr");
+			lastStateNr.setAccessible(true);
+			return lastStateNr.getInt(this) + 1;
+		} catch (Exception e) {
+			return -1; // not available in this Coco/R version
+		}
+	}
+
+	private void next(Phase phase) {
+		long now = System.nanoTime();
+		if (current != null && statistics != null) {
+			statistics.add(current, now - mark);
+		}
+		current = phase;
+		mark = now;
+	}
+}
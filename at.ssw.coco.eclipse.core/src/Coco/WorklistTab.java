@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package Coco;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Extend the Coco/R class <code>Tab</code> to compute the deletable symbols and the
+ * first and follow sets with worklists.
+ * <p>
+ * Coco/R evaluates all productions again until no deletability changes, computes
+ * the first set of a nonterminal by descending into every nonterminal it can start
+ * with that is not ready yet, and completes every follow set by a search over all
+ * nonterminals for each nonterminal reached. Here a production is only evaluated
+ * again if a set it depends on changed:
+ * <ul>
+ * <li>deletability and first sets flow from a production to its callers,</li>
+ * <li>follow sets flow from a nonterminal to the nonterminals that can end it.</li>
+ * </ul>
+ * Starting from empty sets this yields the same least solution. The first sets of
+ * node sequences are collected into one set instead of a new set per nested
+ * nonterminal and structure, and the sets needed only during the computation are
+ * reused.
+ * <p>
+ * If first sets are traced, they are computed by Coco/R, so that the trace is the same.
+ * <p>
+ * Note: This class must be in the package Coco due to limitations of the current Coco/R version.
+ */
+class WorklistTab extends IndexedTab {
+	/** the nodes of every production in breadth first order */
+	List<List<Node>> graphs;
+
+	/** the nonterminals called by every production */
+	List<List<Symbol>> callees;
+
+	/** the productions calling every nonterminal */
+	List<List<Symbol>> callers;
+
+	/** the nonterminals, callees before their callers unless they call each other */
+	private int[] calleesFirst;
+
+	/** the nodes visited while collecting a first set */
+	private BitSet mark;
+
+	public WorklistTab(Parser parser) {
+		super(parser);
+	}
+
+	@Override
+	public void CompSymbolSets() {
+		collectGraphs();
+		super.CompSymbolSets();
+	}
+
+	@Override
+	public void CompDeletableSymbols() {
+		Worklist work = new Worklist(nonterminals.size(), calleesFirst);
+		for (int i = work.next(); i >= 0; i = work.next()) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			if (!sym.deletable && sym.graph != null && DelGraph(sym.graph)) {
+				sym.deletable = true;
+				work.addAll(callers.get(i));
+			}
+		}
+		// adds nothing, but reports the deletable symbols
+		super.CompDeletableSymbols();
+	}
+
+	@Override
+	void CompFirstSets() {
+		if (ddt[3]) {
+			super.CompFirstSets();
+			return;
+		}
+		for (int i = 0; i < nonterminals.size(); i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			sym.first = new BitSet(terminals.size());
+			sym.firstReady = true;
+		}
+		Worklist work = new Worklist(nonterminals.size(), calleesFirst);
+		BitSet first = new BitSet(terminals.size());
+		for (int i = work.next(); i >= 0; i = work.next()) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			first.clear();
+			first(sym.graph, mark(), first);
+			if (!first.equals(sym.first)) {
+				BitSet old = sym.first;
+				sym.first = first;
+				first = old;
+				work.addAll(callers.get(i));
+			}
+		}
+	}
+
+	@Override
+	void CompFollowSets() {
+		if (ddt[3]) {
+			super.CompFollowSets();
+			return;
+		}
+		int n = nonterminals.size();
+		for (int i = 0; i < n; i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			sym.follow = new BitSet(terminals.size());
+			sym.nts = new BitSet(n);
+		}
+		gramSy.follow.set(eofSy.n);
+		// direct successors
+		BitSet first = new BitSet(terminals.size());
+		for (int i = 0; i < n; i++) {
+			for (Node p : graphs.get(i)) {
+				if (p.typ == Node.nt) {
+					first.clear();
+					first(p.next, mark(), first);
+					p.sym.follow.or(first);
+					if (DelGraph(p.next)) {
+						p.sym.nts.set(i);
+					}
+				}
+			}
+		}
+		// indirect successors
+		BitSet all = new BitSet(n);
+		all.set(0, n);
+		completeFollowSets(all);
+	}
+
+	@Override
+	public BitSet First(Node p) {
+		if (ddt[3]) {
+			return super.First(p);
+		}
+		BitSet first = new BitSet(terminals.size());
+		first(p, mark(), first);
+		return first;
+	}
+
+	@Override
+	BitSet First0(Node p, BitSet mark) {
+		BitSet first = new BitSet(terminals.size());
+		first(p, mark, first);
+		return first;
+	}
+
+	/**
+	 * Adds the follow sets of the nonterminals in <code>nts</code> of every symbol
+	 * in <code>syms</code> to its follow set until nothing changes, and clears
+	 * <code>nts</code>. The follow sets of the other nonterminals must be complete.
+	 *
+	 * @param syms The numbers of the nonterminals whose follow sets are completed.
+	 */
+	void completeFollowSets(BitSet syms) {
+		int n = nonterminals.size();
+		List<List<Symbol>> ends = new ArrayList<List<Symbol>>(n); // the nonterminals in nts
+		List<List<Symbol>> dependents = new ArrayList<List<Symbol>>(n);
+		for (int i = 0; i < n; i++) {
+			ends.add(new ArrayList<Symbol>());
+			dependents.add(new ArrayList<Symbol>());
+		}
+		for (int i = syms.nextSetBit(0); i >= 0; i = syms.nextSetBit(i + 1)) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			for (int j = sym.nts.nextSetBit(0); j >= 0; j = sym.nts.nextSetBit(j + 1)) {
+				if (syms.get(j)) {
+					ends.get(i).add((Symbol) nonterminals.get(j));
+				}
+				dependents.get(j).add(sym);
+			}
+		}
+		// complete the follow sets a follow set depends on first
+		Worklist work = new Worklist(n);
+		for (int i : postorder(ends)) {
+			if (syms.get(i)) {
+				work.add(i);
+			}
+		}
+		for (int i = work.next(); i >= 0; i = work.next()) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			int size = sym.follow.cardinality();
+			for (int j = sym.nts.nextSetBit(0); j >= 0; j = sym.nts.nextSetBit(j + 1)) {
+				sym.follow.or(((Symbol) nonterminals.get(j)).follow);
+			}
+			if (sym.follow.cardinality() != size) {
+				work.addAll(dependents.get(i));
+			}
+		}
+		for (int i = syms.nextSetBit(0); i >= 0; i = syms.nextSetBit(i + 1)) {
+			((Symbol) nonterminals.get(i)).nts.clear();
+		}
+	}
+
+	/**
+	 * Collects the nodes, the callees and the callers of every production, unless
+	 * already done.
+	 */
+	void collectGraphs() {
+		if (graphs != null) {
+			return;
+		}
+		int n = nonterminals.size();
+		graphs = new ArrayList<List<Node>>(n);
+		callees = new ArrayList<List<Symbol>>(n);
+		callers = new ArrayList<List<Symbol>>(n);
+		for (int i = 0; i < n; i++) {
+			callers.add(new ArrayList<Symbol>());
+		}
+		int[] index = new int[nodes.size()]; // position of a node in its graph + 1
+		int[] calledBy = new int[n]; // the last caller of a nonterminal + 1
+		for (int i = 0; i < n; i++) {
+			Symbol sym = (Symbol) nonterminals.get(i);
+			List<Node> graph = new ArrayList<Node>();
+			if (sym.graph != null) {
+				add(sym.graph, graph, index);
+				for (int j = 0; j < graph.size(); j++) {
+					Node p = graph.get(j);
+					add(p.next, graph, index);
+					add(p.down, graph, index);
+					add(p.sub, graph, index);
+				}
+			}
+			graphs.add(graph);
+
+			List<Symbol> called = new ArrayList<Symbol>();
+			for (Node p : graph) {
+				if (p.typ == Node.nt && calledBy[p.sym.n] != i + 1) {
+					calledBy[p.sym.n] = i + 1;
+					called.add(p.sym);
+					callers.get(p.sym.n).add(sym);
+				}
+			}
+			callees.add(called);
+		}
+		calleesFirst = postorder(callees);
+	}
+
+	/**
+	 * @return all nonterminals in the order a depth first search along <code>edges</code>
+	 *         finishes them, i.e. after the nonterminals they reach unless these reach them too.
+	 */
+	private static int[] postorder(List<List<Symbol>> edges) {
+		int n = edges.size();
+		int[] order = new int[n];
+		int count = 0;
+		boolean[] seen = new boolean[n];
+		int[] path = new int[n];
+		int[] edge = new int[n];
+		for (int root = 0; root < n; root++) {
+			if (seen[root]) {
+				continue;
+			}
+			seen[root] = true;
+			int depth = 0;
+			path[0] = root;
+			edge[0] = 0;
+			while (depth >= 0) {
+				int i = path[depth];
+				List<Symbol> syms = edges.get(i);
+				if (edge[depth] < syms.size()) {
+					int j = syms.get(edge[depth]++).n;
+					if (!seen[j]) {
+						seen[j] = true;
+						path[++depth] = j;
+						edge[depth] = 0;
+					}
+				} else {
+					order[count++] = i;
+					depth--;
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Appends a node to the nodes of a graph in breadth first order, unless it is
+	 * already there.
+	 */
+	private static void add(Node p, List<Node> graph, int[] index) {
+		if (p == null) {
+			return;
+		}
+		int i = index[p.n];
+		if (i == 0 || i > graph.size() || graph.get(i - 1) != p) {
+			graph.add(p);
+			index[p.n] = graph.size();
+		}
+	}
+
+	/**
+	 * Adds the first set of a node sequence to <code>first</code>, like <code>First0</code>.
+	 */
+	private void first(Node p, BitSet mark, BitSet first) {
+		while (p != null && !mark.get(p.n)) {
+			mark.set(p.n);
+			switch (p.typ) {
+			case Node.nt:
+				if (p.sym.firstReady) {
+					first.or(p.sym.first);
+				} else {
+					first(p.sym.graph, mark, first);
+				}
+				break;
+			case Node.t:
+			case Node.wt:
+				first.set(p.sym.n);
+				break;
+			case Node.any:
+				first.or(p.set);
+				break;
+			case Node.alt:
+				first(p.sub, mark, first);
+				first(p.down, mark, first);
+				break;
+			case Node.iter:
+			case Node.opt:
+				first(p.sub, mark, first);
+				break;
+			}
+			if (!DelNode(p)) {
+				break;
+			}
+			p = p.next;
+		}
+	}
+
+	/**
+	 * @return the cleared set of visited nodes.
+	 */
+	private BitSet mark() {
+		if (mark == null) {
+			mark = new BitSet(nodes.size());
+		} else {
+			mark.clear();
+		}
+		return mark;
+	}
+
+	/**
+	 * A queue of nonterminal numbers, each queued at most once at a time. As no
+	 * number is queued twice, a ring of one slot per nonterminal holds the queue.
+	 */
+	static final class Worklist {
+		private final BitSet queued;
+		private final int[] queue;
+		private int head = 0;
+		private int size = 0;
+
+		/**
+		 * @param n The number of nonterminals.
+		 */
+		Worklist(int n) {
+			queued = new BitSet(n);
+			queue = new int[n];
+		}
+
+		Worklist(int n, BitSet initial) {
+			this(n);
+			for (int i = initial.nextSetBit(0); i >= 0; i = initial.nextSetBit(i + 1)) {
+				add(i);
+			}
+		}
+
+		Worklist(int n, int[] initial) {
+			this(n);
+			for (int i : initial) {
+				add(i);
+			}
+		}
+
+		void add(int i) {
+			if (!queued.get(i)) {
+				queued.set(i);
+				int tail = head + size;
+				queue[tail < queue.length ? tail : tail - queue.length] = i;
+				size++;
+			}
+		}
+
+		void addAll(List<Symbol> syms) {
+			for (Symbol sym : syms) {
+				add(sym.n);
+			}
+		}
+
+		/** @return the next nonterminal, or -1 if the queue is empty. */
+		int next() {
+			if (size == 0) {
+				return -1;
+			}
+			int i = queue[head];
+			head = head + 1 < queue.length ? head + 1 : 0;
+			size--;
+			queued.clear(i);
+			return i;
+		}
+	}
+}
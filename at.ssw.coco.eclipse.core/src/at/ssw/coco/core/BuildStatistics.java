@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent in the phases of building one grammar, together with size metrics
+ * of the grammar. Instances are not thread-safe; each build uses its own.
+ */
+public final class BuildStatistics {
+	/** The measured phases. */
+	public enum Phase {
+		/** Scanning and parsing the ATG file, including the construction of the NFA. */
+		PARSE("parse"),
+		/** Making the scanner automaton deterministic. */
+		DFA("dfa"),
+		/** Grammar analysis and writing the parser; includes {@link #MAPPING}. */
+		PARSER("parser"),
+		/** Recording the mapping between the parser and the ATG file. */
+		MAPPING("mapping"),
+		/** Writing the scanner. */
+		SCANNER("scanner"),
+		/** Comparing and writing the generated files. */
+		WRITE("write"),
+		/** Creating problem markers for Coco/R errors. */
+		MARKERS("markers"),
+		/** Refreshing the generated files in the workspace. */
+		REFRESH("refresh"),
+		/** Mapping Java problems of the parser back to the ATG file. */
+		MARKER_MAPPING("markerMapping");
+
+		private final String key;
+
+		private Phase(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private final String grammar;
+
+	private final long timestamp = System.currentTimeMillis();
+
+	private final long[] nanos = new long[Phase.values().length];
+
+	private final Map<String, Integer> metrics = new LinkedHashMap<String, Integer>();
+
+	/**
+	 * @param grammar The location of the ATG file.
+	 */
+	public BuildStatistics(String grammar) {
+		this.grammar = grammar;
+	}
+
+	public String getGrammar() {
+		return grammar;
+	}
+
+	/**
+	 * Adds time spent in a phase.
+	 *
+	 * @param phase The phase.
+	 * @param nanos The elapsed time in nanoseconds.
+	 */
+	public void add(Phase phase, long nanos) {
+		this.nanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Adds the time elapsed since <code>startNanos</code> to a phase.
+	 *
+	 * @param phase The phase.
+	 * @param startNanos A value of {@link System#nanoTime()}.
+	 */
+	public void addSince(Phase phase, long startNanos) {
+		add(phase, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @param phase The phase.
+	 * @return the time spent in <code>phase</code> in nanoseconds.
+	 */
+	public long get(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	/**
+	 * Sets a size metric, e.g. the number of terminals.
+	 *
+	 * @param name The metric name.
+	 * @param value The value.
+	 */
+	public void setMetric(String name, int value) {
+		metrics.put(name, Integer.valueOf(value));
+	}
+
+	/**
+	 * @return the statistics as a single line JSON object.
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"grammar\":");
+		appendString(sb, grammar);
+		sb.append(",\"timestamp\":").append(timestamp);
+		sb.append(",\"phasesMs\":{");
+		boolean first = true;
+		for (Phase phase : Phase.values()) {
+			long n = nanos[phase.ordinal()];
+			if (n == 0) {
+				continue; // not measured in this build
+			}
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			sb.append('"').append(phase.getKey()).append("\":");
+			sb.append(n / 1000000).append('.');
+			long fraction = (n / 1000) % 1000; // microseconds
+			if (fraction < 100) sb.append('0');
+			if (fraction < 10) sb.append('0');
+			sb.append(fraction);
+		}
+		sb.append('}');
+		for (Map.Entry<String, Integer> metric : metrics.entrySet()) {
+			sb.append(',');
+			appendString(sb, metric.getKey());
+			sb.append(':').append(metric.getValue());
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static void appendString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '"':  sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (ch < ' ') {
+					sb.append(String.format("\\u%04x", Integer.valueOf(ch)));
+				} else {
+					sb.append(ch);
+				}
+			}
+		}
+		sb.append('"');
+	}
+}
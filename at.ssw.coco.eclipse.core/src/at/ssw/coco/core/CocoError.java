@@ -26,6 +26,9 @@ public class CocoError {
 	/** True if it is a warning, false if it is an error. */
 	private boolean fWarning;
 
+	/** True if it only informs about the run; such a message also counts as warning. */
+	private boolean fInfo;
+
 	/** The line number. */
 	private int fLine;
 
@@ -66,6 +69,20 @@ public class CocoError {
 		this(warning, -1, -1, message);
 	}
 
+	/**
+	 * Creates a message that only informs about the run, e.g. about the size of
+	 * the generated scanner. It counts as warning, so it does not fail a build.
+	 *
+	 * @param message
+	 *            The message.
+	 * @return the message.
+	 */
+	public static CocoError info(String message) {
+		CocoError info = new CocoError(true, message);
+		info.fInfo = true;
+		return info;
+	}
+
 	/**
 	 * Returns the servity of the error.
 	 *
@@ -75,6 +92,15 @@ public class CocoError {
 		return fWarning;
 	}
 
+	/**
+	 * Returns whether the message only informs about the run.
+	 *
+	 * @return True if it is an information, which is also a warning.
+	 */
+	public boolean getInfo() {
+		return fInfo;
+	}
+
 	/**
 	 * Returns the line number of the error.
 	 *
@@ -24,7 +24,7 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.osgi.framework.Bundle;
 
-import Coco.CocoExecuter;
+import Coco.GrammarCompilation;
 
 /**
  * Utility class with ID-strings and static methods.
@@ -53,9 +53,15 @@ public final class CoreUtilities {
 	/** The file name of the scanner template file. */
 	public static String SCANNER_TEMPLATE = "Scanner.frame";
 
+	/** The file name of the scanner template file whose buffer maps the input file into memory. */
+	public static String MAPPED_SCANNER_TEMPLATE = "MappedScanner.frame";
+
 	/** The file name of the parser template file. */
 	public static String PARSER_TEMPLATE = "Parser.frame";
 
+	/** The file name of the optional copyright template file. */
+	public static String COPYRIGHT_TEMPLATE = "Copyright.frame";
+
 	/** The file names of all template files. */
 	public static String[] ALL_TEMPLATES = { ATG_TEMPLATE, SCANNER_TEMPLATE, PARSER_TEMPLATE };
 
@@ -74,33 +80,135 @@ public final class CoreUtilities {
 	 * @param traceStr The trace string.
 	 * @param mapping An optional mapping.
 	 * @return a list of <code>CocoError</code>s.
+	 * @deprecated Use {@link #compileGrammar(String, String, String, String, String, Mapping, BuildStatistics, GeneratorOptions)}
+	 *             and {@link GrammarCompilation#write(String)}.
 	 */
+	@Deprecated
 	public static List<CocoError> executeCoco(String srcName, String srcDir, String outDir, String frameDir, String nsName, String traceStr, Mapping mapping) {
-		return CocoExecuter.execute(srcName, srcDir, outDir, frameDir, nsName, traceStr, mapping);
+		return compileGrammar(srcName, srcDir, frameDir, nsName, traceStr, mapping, null, null).write(outDir);
 	}
+	/**
+	 * Executes Coco/R with the given parameters and measures its phases.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param outDir The output directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string.
+	 * @param mapping An optional mapping.
+	 * @param statistics Optionally receives phase times and grammar metrics.
+	 * @return a list of <code>CocoError</code>s.
+	 * @deprecated Use {@link #compileGrammar(String, String, String, String, String, Mapping, BuildStatistics, GeneratorOptions)}
+	 *             and {@link GrammarCompilation#write(String)}.
+	 */
+	@Deprecated
+	public static List<CocoError> executeCoco(String srcName, String srcDir, String outDir, String frameDir, String nsName, String traceStr, Mapping mapping, BuildStatistics statistics) {
+		return compileGrammar(srcName, srcDir, frameDir, nsName, traceStr, mapping, statistics, null).write(outDir);
+	}
+	/**
+	 * Executes Coco/R with the given parameters and options and measures its phases.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param outDir The output directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string.
+	 * @param mapping An optional mapping.
+	 * @param statistics Optionally receives phase times and grammar metrics.
+	 * @param options The generator options, or <code>null</code> for the defaults.
+	 * @return a list of <code>CocoError</code>s.
+	 * @deprecated Use {@link #compileGrammar(String, String, String, String, String, Mapping, BuildStatistics, GeneratorOptions)}
+	 *             and {@link GrammarCompilation#write(String)}.
+	 */
+	@Deprecated
+	public static List<CocoError> executeCoco(String srcName, String srcDir, String outDir, String frameDir, String nsName, String traceStr, Mapping mapping, BuildStatistics statistics, GeneratorOptions options) {
+		return compileGrammar(srcName, srcDir, frameDir, nsName, traceStr, mapping, statistics, options).write(outDir);
+	}
+	/** @deprecated Use {@link #compileGrammar(String, String, String, String)} and {@link GrammarCompilation#write(String)}. */
+	@Deprecated
 	public static List<CocoError> executeCoco(String srcName, String srcDir, String outDir, String frameDir, String nsName, String traceStr) {
-		return CocoExecuter.execute(srcName, srcDir, outDir, frameDir, nsName, traceStr, null);
+		return GrammarCompilation.compile(srcName, srcDir, frameDir, nsName, traceStr).write(outDir);
 	}
+	/** @deprecated Use {@link #compileGrammar(String, String, String, String)} and {@link GrammarCompilation#write(String)}. */
+	@Deprecated
 	public static List<CocoError> executeCoco(String srcName, String srcDir, String outDir, String frameDir, String nsName) {
-		return CocoExecuter.execute(srcName, srcDir, outDir, frameDir, nsName, null, null);
+		return compileGrammar(srcName, srcDir, frameDir, nsName).write(outDir);
 	}
+	/** @deprecated Use {@link #compileGrammar(InputStream, String, String, String, String)} and {@link GrammarCompilation#write(String)}. */
+	@Deprecated
 	public static List<CocoError> executeCoco(InputStream stream, String srcName, String srcDir, String outDir, String frameDir, String nsName){
-		return CocoExecuter.execute(stream, srcName, srcDir, outDir, frameDir, nsName, null, null);
+		return compileGrammar(stream, srcName, srcDir, frameDir, nsName).write(outDir);
 	}
 	
+	/**
+	 * Parses and analyses an ATG file once; parser and scanner sources are generated
+	 * on demand from the result. Callers passing the same arguments share the
+	 * compilation until the ATG file or a frame file changes.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @return the compilation.
+	 */
+	public static GrammarCompilation compileGrammar(String srcName, String srcDir, String frameDir, String nsName) {
+		return GrammarCompilation.compile(srcName, srcDir, frameDir, nsName, null);
+	}
+	/**
+	 * Parses and analyses an ATG file for a build, which writes the generated
+	 * files with {@link GrammarCompilation#write(String)}.
+	 *
+	 * @param srcName The atg file name.
+	 * @param srcDir The source directory.
+	 * @param frameDir The directory containing the frame files.
+	 * @param nsName The parsers package name.
+	 * @param traceStr The trace string.
+	 * @param mapping An optional mapping.
+	 * @param statistics Optionally receives phase times and grammar metrics.
+	 * @param options The generator options, or <code>null</code> for the defaults.
+	 * @return the compilation.
+	 */
+	public static GrammarCompilation compileGrammar(String srcName, String srcDir, String frameDir, String nsName, String traceStr, Mapping mapping, BuildStatistics statistics, GeneratorOptions options) {
+		return GrammarCompilation.compile(srcName, srcDir, frameDir, nsName, traceStr, options, mapping, statistics);
+	}
+	public static GrammarCompilation compileGrammar(InputStream stream, String srcName, String srcDir, String frameDir, String nsName) {
+		return GrammarCompilation.compile(stream, srcName, srcDir, frameDir, nsName, null);
+	}
+	public static GrammarCompilation compileGrammar(CharSequence text, String srcName, String srcDir, String frameDir, String nsName) {
+		return GrammarCompilation.compile(text, srcName, srcDir, frameDir, nsName, null);
+	}
+
+	/** @deprecated Use {@link #compileGrammar(InputStream, String, String, String, String)} and {@link GrammarCompilation#getParserSource()}. */
+	@Deprecated
 	public static String generateTemporaryParser(InputStream stream, String srcName, String srcDir, String frameDir, String nsName){
-		return CocoExecuter.generateATGEditorTempParser(stream, srcName, srcDir, frameDir, nsName, null);
+		return nonNull(compileGrammar(stream, srcName, srcDir, frameDir, nsName).getParserSource());
+	}
+	/** @deprecated Use {@link #compileGrammar(CharSequence, String, String, String, String)} and {@link GrammarCompilation#getParserSource()}. */
+	@Deprecated
+	public static String generateTemporaryParser(CharSequence text, String srcName, String srcDir, String frameDir, String nsName){
+		return nonNull(compileGrammar(text, srcName, srcDir, frameDir, nsName).getParserSource());
 	}
 	
+	/** @deprecated Use {@link #compileGrammar(String, String, String, String)} and {@link GrammarCompilation#getTab()}. */
+	@Deprecated
 	public static Coco.Tab generateParserTab( String srcName, String srcDir, String frameDir, String nsName){
-		return CocoExecuter.generateParserTab(srcName, srcDir, frameDir, nsName, null);
+		return compileGrammar(srcName, srcDir, frameDir, nsName).getTab();
 	}
 	
+	/** @deprecated Use {@link #compileGrammar(String, String, String, String, String, Mapping, BuildStatistics, GeneratorOptions)} and {@link GrammarCompilation#write(String)}. */
+	@Deprecated
 	public static Coco.Parser generateEditor(String srcName, String srcDir, String outDir, String frameDir, String nsName, String traceStr){
-		return CocoExecuter.generateEditor(srcName, srcDir, outDir, frameDir, nsName, traceStr);
+		GrammarCompilation compilation = compileGrammar(srcName, srcDir, frameDir, nsName, traceStr, null, null, null);
+		compilation.write(outDir);
+		return compilation.getParser();
 	}
 	
-	
+	/** the temporary parser was empty if the grammar had errors */
+	private static String nonNull(String parserSource) {
+		return parserSource != null ? parserSource : "";
+	}
 	
 	/**
 	 * Computes the template URL where a template file can be copied from.
@@ -123,4 +231,20 @@ public final class CoreUtilities {
 		Bundle bundle = Platform.getBundle(PLUGIN_ID);
 		Platform.getLog(bundle).log(status);
 	}
+
+	/**
+	 * Utility method to report a warning to the platform log, or to the console
+	 * if the platform is not running, e.g. in tests.
+	 *
+	 * @param message The human-readable message.
+	 * @param ex The exception, or null if not applicable.
+	 */
+	public static void logWarning(String message, Throwable ex) {
+		Bundle bundle = Platform.isRunning() ? Platform.getBundle(PLUGIN_ID) : null;
+		if (bundle == null) {
+			System.err.println("Warning: " + message + (ex != null ? ": " + ex : ""));
+			return;
+		}
+		Platform.getLog(bundle).log(new Status(IStatus.WARNING, PLUGIN_ID, 0, message, ex));
+	}
 }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A frame file split at its <code>--&gt;</code> markers, e.g.
+ * <code>--&gt;declarations</code>.
+ * <p>
+ * Templates are cached by the absolute path of the frame file and reread only if
+ * its modification stamp or length changed, so the frames of a workspace are read
+ * once and shared by all generations and editors.
+ */
+public final class FrameTemplate {
+	private static final String MARKER = "-->";
+
+	/** the number of frame files kept in the cache */
+	private static final int CACHE_SIZE = 32;
+
+	/** templates by path, listed with the other caches in <code>Coco.CocoEngine</code> */
+	private static final Map<String, FrameTemplate> cache =
+		new LinkedHashMap<String, FrameTemplate>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FrameTemplate> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	private final long lastModified;
+
+	private final long length;
+
+	private final String text;
+
+	/** the text before the first marker */
+	private final String head;
+
+	/** the marker names in the order of the frame */
+	private final String[] markers;
+
+	/** the text following each marker up to the next one */
+	private final String[] fragments;
+
+	private FrameTemplate(String text, long lastModified, long length) {
+		this.text = text;
+		this.lastModified = lastModified;
+		this.length = length;
+
+		List<String> names = new ArrayList<String>();
+		List<String> parts = new ArrayList<String>();
+		int pos = text.indexOf(MARKER);
+		head = text.substring(0, pos >= 0 ? pos : text.length());
+		while (pos >= 0) {
+			int nameEnd = pos + MARKER.length();
+			while (nameEnd < text.length() && Character.isLetterOrDigit(text.charAt(nameEnd))) {
+				nameEnd++;
+			}
+			int next = text.indexOf(MARKER, nameEnd);
+			names.add(text.substring(pos + MARKER.length(), nameEnd));
+			parts.add(text.substring(nameEnd, next >= 0 ? next : text.length()));
+			pos = next;
+		}
+		markers = names.toArray(new String[names.size()]);
+		fragments = parts.toArray(new String[parts.size()]);
+	}
+
+	/**
+	 * Returns the template of a frame file, reading it only if it is not cached or
+	 * changed since it was read.
+	 *
+	 * @param file The frame file.
+	 * @return the template.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static FrameTemplate get(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized (cache) {
+			FrameTemplate template = cache.get(key);
+			if (template != null && template.lastModified == lastModified && template.length == length) {
+				return template;
+			}
+		}
+		FrameTemplate template = new FrameTemplate(read(file), lastModified, length);
+		synchronized (cache) {
+			cache.put(key, template);
+		}
+		return template;
+	}
+
+	/**
+	 * @return the complete text of the frame.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the text before the first marker.
+	 */
+	public String getHead() {
+		return head;
+	}
+
+	/**
+	 * @param marker The marker name without <code>--&gt;</code>, e.g. <code>declarations</code>.
+	 * @return the text between <code>marker</code> and the next marker, or
+	 *         <code>null</code> if the frame does not contain <code>marker</code>.
+	 */
+	public String getFragment(String marker) {
+		for (int i = 0; i < markers.length; i++) {
+			if (markers[i].equals(marker)) {
+				return fragments[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the frame with the platform encoding, as Coco/R does.
+	 */
+	private static String read(File file) throws IOException {
+		Reader reader = new FileReader(file);
+		try {
+			StringBuilder sb = new StringBuilder((int) file.length());
+			char[] buf = new char[8192];
+			int n;
+			while ((n = reader.read(buf)) != -1) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		} finally {
+			reader.close();
+		}
+	}
+}
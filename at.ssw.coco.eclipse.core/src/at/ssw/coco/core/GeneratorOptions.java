@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core;
+
+/**
+ * Options of generating the parser and scanner of a grammar that Coco/R itself
+ * does not offer. A new instance has all options turned off.
+ */
+public final class GeneratorOptions {
+	private boolean minimizeScanner = false;
+
+	private boolean mappedScannerInput = false;
+
+	/**
+	 * @return whether the scanner automaton is minimised before the scanner is written.
+	 */
+	public boolean isMinimizeScanner() {
+		return minimizeScanner;
+	}
+
+	/**
+	 * @param minimizeScanner Whether the scanner automaton is minimised before the
+	 *        scanner is written.
+	 */
+	public void setMinimizeScanner(boolean minimizeScanner) {
+		this.minimizeScanner = minimizeScanner;
+	}
+
+	/**
+	 * @return whether the generated scanner maps its input file into memory, see
+	 *         {@link CoreUtilities#MAPPED_SCANNER_TEMPLATE}.
+	 */
+	public boolean isMappedScannerInput() {
+		return mappedScannerInput;
+	}
+
+	/**
+	 * @param mappedScannerInput Whether the generated scanner maps its input file
+	 *        into memory instead of reading it in windows of 64 KB.
+	 */
+	public void setMappedScannerInput(boolean mappedScannerInput) {
+		this.mappedScannerInput = mappedScannerInput;
+	}
+
+	/**
+	 * @return the name of the frame the scanner is generated from.
+	 */
+	public String getScannerFrame() {
+		return mappedScannerInput ? CoreUtilities.MAPPED_SCANNER_TEMPLATE : CoreUtilities.SCANNER_TEMPLATE;
+	}
+
+	/**
+	 * @return a string identifying the options, e.g. as part of cache keys.
+	 */
+	public String getKey() {
+		String key = minimizeScanner ? "minimizeScanner" : "";
+		if (mappedScannerInput) {
+			key += key.length() > 0 ? ",mappedScannerInput" : "mappedScannerInput";
+		}
+		return key;
+	}
+}
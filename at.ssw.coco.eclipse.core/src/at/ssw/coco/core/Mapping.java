@@ -17,19 +17,23 @@
 package at.ssw.coco.core;
 
 import java.io.BufferedReader;
+import java.io.DataOutput;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
  * This class stores mapping information between an output file and its source file.
+ * <p>
+ * The mapped ranges are kept in parallel int arrays ordered by their position in the
+ * output file, so lookups neither allocate nor compare objects.
  *
  * @author Andreas Woess <andwoe@users.sf.net>
  */
@@ -75,41 +79,32 @@ public final class Mapping {
 		}
 	}
 
-	private static class Range {
-		public Position from = new Position();
-		public Position to = new Position();
-		public int length;
+	private static final int INITIAL_CAPACITY = 64;
 
-		public Range(Position from, Position to, int length) {
-			super();
-			this.from = from;
-			this.to = to;
-			this.length = length;
-		}
+	/** Number of ints per range in the binary format. */
+	private static final int RANGE_INTS = 7;
 
-		@Override
-		public String toString() {
-			return from.toString() + ";" + to.toString() + ";" + length;
-		}
+	private int size = 0;
 
-		public static Range fromString(String s) throws IllegalArgumentException {
-			String[] a = s.split(";");
-			if (a.length >= 3) {
-				return new Range(
-						Position.fromString(a[0]),
-						Position.fromString(a[1]),
-						Integer.parseInt(a[2]));
-			} else {
-				throw new IllegalArgumentException();
-			}
-		}
-	}
-
-	private final List<Range> ranges = new ArrayList<Range>();
+	// ranges, ordered by output position
+	private int[] fromOffset = new int[INITIAL_CAPACITY];
+	private int[] fromLine = new int[INITIAL_CAPACITY];
+	private int[] fromColumn = new int[INITIAL_CAPACITY];
+	private int[] toOffset = new int[INITIAL_CAPACITY];
+	private int[] toLine = new int[INITIAL_CAPACITY];
+	private int[] toColumn = new int[INITIAL_CAPACITY];
+	private int[] length = new int[INITIAL_CAPACITY];
 
 	public Mapping() {
 	}
 
+	/**
+	 * @return the number of mapped ranges.
+	 */
+	public int size() {
+		return size;
+	}
+
 	/**
 	 * Get the associated position in the source file.
 	 *
@@ -118,37 +113,42 @@ public final class Mapping {
 	 * @return the Position in the source file.
 	 */
 	public Position get(final int line, final int column) {
-		if (ranges.isEmpty()) return null;
-
-		int index = Collections.binarySearch(ranges, new Object(), new Comparator<Object>() {
-			public int compare(Object candidate, Object dummy) {
-				int result = ((Range)candidate).from.line - line;
-				if (0 == result) {
-					result = ((Range)candidate).from.column - column;
-				}
-				return result;
-			}
-		});
+		Position result = new Position();
+		return get(line, column, result) ? result : null;
+	}
 
-		if (index >= 0) {
-			return ranges.get(index).to;
-		} else {
-			index = (-index-1) - 1;
-			if (index < 0) return null;
-
-			Range entry = ranges.get(index);
-			if (entry.from.line == line
-					&& entry.from.column <= column
-					&& entry.from.column + entry.length > column) {
-				int delta = column - entry.from.column;
-				return new Position(
-						entry.to.line,
-						entry.to.column + delta,
-						entry.to.offset + delta);
+	/**
+	 * Get the associated position in the source file without allocating.
+	 *
+	 * @param line Line in the output file.
+	 * @param column Column in the output file.
+	 * @param result Receives the position in the source file.
+	 * @return whether the position is mapped; <code>result</code> is unchanged if not.
+	 */
+	public boolean get(final int line, final int column, Position result) {
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = fromLine[mid] - line;
+			if (cmp == 0) {
+				cmp = fromColumn[mid] - column;
+			}
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return set(result, mid, 0);
 			}
 		}
 
-		return null;
+		int index = lo - 1; // last range starting before the position
+		if (index >= 0 && fromLine[index] == line
+				&& fromColumn[index] + length[index] > column) {
+			return set(result, index, column - fromColumn[index]);
+		}
+		return false;
 	}
 
 	/**
@@ -158,32 +158,75 @@ public final class Mapping {
 	 * @return the Position in the source file.
 	 */
 	public Position get(final int offset) {
-		if (ranges.isEmpty()) return null;
+		Position result = new Position();
+		return get(offset, result) ? result : null;
+	}
 
-		int index = Collections.binarySearch(ranges, new Object(), new Comparator<Object>() {
-			public int compare(Object candidate, Object dummy) {
-				return ((Range)candidate).from.offset - offset;
+	/**
+	 * Get the associated position in the source file without allocating.
+	 *
+	 * @param offset Offset in the output file.
+	 * @param result Receives the position in the source file.
+	 * @return whether the offset is mapped; <code>result</code> is unchanged if not.
+	 */
+	public boolean get(final int offset, Position result) {
+		int index = indexOf(offset, 0, size);
+		if (index < 0) {
+			return false;
+		}
+		return set(result, index, offset - fromOffset[index]);
+	}
+
+	/**
+	 * Bulk variant of {@link #get(int)}, e.g. for all problem markers of a file.
+	 * Ascending offsets are looked up with a single pass over the ranges.
+	 *
+	 * @param offsets Offsets in the output file.
+	 * @param lines Receives the source lines, <code>-1</code> for unmapped offsets.
+	 * @param sourceOffsets Receives the source offsets, <code>-1</code> for unmapped offsets.
+	 */
+	public void get(int[] offsets, int[] lines, int[] sourceOffsets) {
+		int from = 0;
+		int last = Integer.MIN_VALUE;
+		for (int i = 0; i < offsets.length; i++) {
+			int offset = offsets[i];
+			if (offset < last) {
+				from = 0; // not ascending, search all ranges again
+			}
+			last = offset;
+			int index = indexOf(offset, from, size);
+			if (index < 0) {
+				lines[i] = -1;
+				sourceOffsets[i] = -1;
+			} else {
+				lines[i] = toLine[index];
+				sourceOffsets[i] = toOffset[index] + (offset - fromOffset[index]);
+				from = index;
 			}
-		});
+		}
+	}
 
+	/**
+	 * @return the index of the range containing <code>offset</code> (end inclusive),
+	 *         searching the ranges <code>[from, to)</code>, or <code>-1</code>.
+	 */
+	private int indexOf(int offset, int from, int to) {
+		int index = Arrays.binarySearch(fromOffset, from, to, offset);
 		if (index >= 0) {
-			return ranges.get(index).to;
-		} else {
-			index = (-index-1) - 1;
-			if (index < 0) return null;
-
-			Range entry = ranges.get(index);
-			if (entry.from.offset <= offset
-					&& offset <= entry.from.offset + entry.length) {
-				int delta = offset - entry.from.offset;
-				return new Position(
-						entry.to.line,
-						entry.to.column + delta,
-						entry.to.offset + delta);
-			}
+			return index;
+		}
+		index = (-index-1) - 1;
+		if (index >= 0 && offset <= fromOffset[index] + length[index]) {
+			return index;
 		}
+		return -1;
+	}
 
-		return null;
+	private boolean set(Position result, int index, int delta) {
+		result.line = toLine[index];
+		result.column = toColumn[index] + delta;
+		result.offset = toOffset[index] + delta;
+		return true;
 	}
 
 	/**
@@ -193,68 +236,170 @@ public final class Mapping {
 	 * @param length Length of the mapping.
 	 */
 	public void add(Position outputPos, Position sourcePos, int length) {
-		if (!ranges.isEmpty()) {
-			Range cur = ranges.get(ranges.size() - 1);
-			if (cur != null
-					&& cur.from.line == outputPos.line
-					&& cur.from.column + cur.length == outputPos.column
-					&& cur.to.line == sourcePos.line
-					&& cur.to.column + cur.length == sourcePos.column) {
-				cur.length += length;
+		add(outputPos.line, outputPos.column, outputPos.offset,
+				sourcePos.line, sourcePos.column, sourcePos.offset, length);
+	}
+
+	/**
+	 * Set a mapping from an output position to a source position. Ranges must be
+	 * added in the order of their output positions; a range continuing the last one
+	 * on the same lines extends it.
+	 *
+	 * @param outLine Starting line in the output file.
+	 * @param outColumn Starting column in the output file.
+	 * @param outOffset Starting offset in the output file.
+	 * @param srcLine Starting line in the source file.
+	 * @param srcColumn Starting column in the source file.
+	 * @param srcOffset Starting offset in the source file.
+	 * @param length Length of the mapping.
+	 */
+	public void add(int outLine, int outColumn, int outOffset,
+			int srcLine, int srcColumn, int srcOffset, int length) {
+		if (size > 0) {
+			int cur = size - 1;
+			if (fromLine[cur] == outLine
+					&& fromColumn[cur] + this.length[cur] == outColumn
+					&& toLine[cur] == srcLine
+					&& toColumn[cur] + this.length[cur] == srcColumn) {
+				this.length[cur] += length;
 				return;
 			}
 		}
+		append(outLine, outColumn, outOffset, srcLine, srcColumn, srcOffset, length);
+	}
+
+	private void append(int outLine, int outColumn, int outOffset,
+			int srcLine, int srcColumn, int srcOffset, int length) {
+		if (size == fromOffset.length) {
+			grow(size * 2);
+		}
+		fromLine[size] = outLine;
+		fromColumn[size] = outColumn;
+		fromOffset[size] = outOffset;
+		toLine[size] = srcLine;
+		toColumn[size] = srcColumn;
+		toOffset[size] = srcOffset;
+		this.length[size] = length;
+		size++;
+	}
+
+	private void grow(int capacity) {
+		capacity = Math.max(capacity, INITIAL_CAPACITY);
+		fromOffset = copyOf(fromOffset, capacity);
+		fromLine = copyOf(fromLine, capacity);
+		fromColumn = copyOf(fromColumn, capacity);
+		toOffset = copyOf(toOffset, capacity);
+		toLine = copyOf(toLine, capacity);
+		toColumn = copyOf(toColumn, capacity);
+		length = copyOf(length, capacity);
+	}
 
-		ranges.add(new Range(outputPos, sourcePos, length));
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
 	}
 
 	public void write(String filename, String grammar) throws FileNotFoundException {
 		PrintWriter writer = new PrintWriter(filename);
-
-		for (Range range : ranges) {
-			writer.println(range);
-		}
+		write(writer);
 		writer.close();
 	}
 
 	public void read(String filename) throws IOException {
 		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		read(reader);
+		reader.close();
+	}
 
-		String line;
-		while ((line = reader.readLine()) != null) {
-			try {
-				ranges.add(Range.fromString(line));
-			} catch (IllegalArgumentException e) {
-				break;
+	/**
+	 * Writes the ranges in binary form: their number followed by seven ints per range.
+	 *
+	 * @param out The output.
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(fromLine[i]);
+			out.writeInt(fromColumn[i]);
+			out.writeInt(fromOffset[i]);
+			out.writeInt(toLine[i]);
+			out.writeInt(toColumn[i]);
+			out.writeInt(toOffset[i]);
+			out.writeInt(length[i]);
+		}
+	}
+
+	/**
+	 * Reads ranges written by {@link #write(DataOutput)}.
+	 *
+	 * @param buffer The input, positioned at the number of ranges.
+	 * @throws IOException if the input is truncated or corrupt.
+	 */
+	public void read(ByteBuffer buffer) throws IOException {
+		try {
+			int count = buffer.getInt();
+			if (count < 0 || count > buffer.remaining() / (RANGE_INTS * 4)) {
+				throw new IOException("Invalid number of ranges: " + count);
+			}
+			if (size + count > fromOffset.length) {
+				grow(size + count);
 			}
+			IntBuffer ints = buffer.asIntBuffer();
+			for (int i = 0; i < count; i++) {
+				append(ints.get(), ints.get(), ints.get(), ints.get(), ints.get(), ints.get(), ints.get());
+			}
+			buffer.position(buffer.position() + count * RANGE_INTS * 4);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated mapping");
 		}
-		reader.close();
 	}
 
 	@Override
 	public String toString() {
 		StringWriter stringWriter = new StringWriter();
 		PrintWriter writer = new PrintWriter(stringWriter);
-		for (Range range : ranges) {
-			writer.println(range);
-		}
+		write(writer);
 		writer.close();
 		return stringWriter.getBuffer().toString();
 	}
 
 	public void readString(String s) {
-		BufferedReader reader = new BufferedReader(new StringReader(s));
-		String line;
 		try {
-			while ((line = reader.readLine()) != null) {
-				try {
-					ranges.add(Range.fromString(line));
-				} catch (IllegalArgumentException e) {
-					break;
-				}
-			}
+			read(new BufferedReader(new StringReader(s)));
 		} catch (IOException e) {
 			// ignore
 		}
 	}
+
+	/**
+	 * Writes one line per range: <code>line,column,offset;line,column,offset;length</code>.
+	 */
+	private void write(PrintWriter writer) {
+		for (int i = 0; i < size; i++) {
+			writer.println(fromLine[i] + "," + fromColumn[i] + "," + fromOffset[i] + ";"
+					+ toLine[i] + "," + toColumn[i] + "," + toOffset[i] + ";" + length[i]);
+		}
+	}
+
+	/**
+	 * Reads the ranges written by {@link #write(PrintWriter)} up to the first invalid line.
+	 */
+	private void read(BufferedReader reader) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] a = line.split(";");
+			if (a.length < 3) {
+				break;
+			}
+			try {
+				Position from = Position.fromString(a[0]);
+				Position to = Position.fromString(a[1]);
+				append(from.line, from.column, from.offset, to.line, to.column, to.offset, Integer.parseInt(a[2]));
+			} catch (IllegalArgumentException e) {
+				break;
+			}
+		}
+	}
 }
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+
+package at.ssw.coco.core.internal.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+
+/**
+ * Edits the attributes of a grammar after a complete run and compares the parser
+ * of the following run, which may be spliced, with the parser of a complete run.
+ */
+public class ActionSplicingTest {
+
+	/**
+	 * relative path from working directory of test-file (engineTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/engineTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "splicing.test";
+
+	/** a grammar with the attributes of the call and of the production of <code>C</code> as parameters */
+	private final static String GRAMMAR =
+		"COMPILER Attr\n" +
+		"CHARACTERS digit = '0'..'9'.\n" +
+		"TOKENS number = digit {digit}.\n" +
+		"PRODUCTIONS\n" +
+		"Attr (. int x = 0; .) = C<%s> .\n" +
+		"C<%s> = number (. r = 1; .).\n" +
+		"END Attr.\n";
+
+	@Test
+	public void testAttributes() {
+		assertSameAsCompleteRun("a.atg", new String[] { "x", "int r" }, new String[] { "x + 1", "int r" });
+	}
+
+	@Test
+	public void testOutputAttributes() {
+		assertSameAsCompleteRun("out.atg", new String[] { "x", "int r" }, new String[] { "out x", "out int r" });
+		assertSameAsCompleteRun("hat.atg", new String[] { "x", "int r" }, new String[] { "^x", "^int r" });
+		assertSameAsCompleteRun("in.atg", new String[] { "out x", "out int r" }, new String[] { "x", "int r" });
+	}
+
+	/**
+	 * Compiles the grammar with the attributes <code>first</code>, then with the
+	 * attributes <code>second</code>, and checks that the second parser is the
+	 * one of a complete run.
+	 */
+	private static void assertSameAsCompleteRun(String name, String[] first, String[] second) {
+		File testFile = new File(PATH);
+		String srcName = new File(testFile.getAbsoluteFile().getParentFile(), name).getPath();
+		String srcDir = testFile.getAbsoluteFile().getParent();
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+
+		GrammarCompilation.compile(String.format(GRAMMAR, (Object[]) first), srcName, srcDir, frameDir,
+				PACKAGE, null).getParserSource();
+		String text = String.format(GRAMMAR, (Object[]) second);
+		String parser = GrammarCompilation.compile(text, srcName, srcDir, frameDir, PACKAGE, null).getParserSource();
+		assertTrue(parser.contains("C("));
+		// a trace string disables splicing
+		assertEquals(GrammarCompilation.compile(text, srcName, srcDir, frameDir, PACKAGE, "S").getParserSource(), parser);
+	}
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.Mapping;
+
+/**
+ * Runs many Coco/R generations concurrently and compares their output
+ * byte-for-byte with a serial run of the same grammar.
+ */
+public class CocoEngineStressTest {
+
+	/**
+	 * relative path from working directory of test-file (engineTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/engineTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "engine.test";
+
+	private final static int THREADS = 16;
+
+	private final static int RUNS = 128;
+
+	private static String srcName;
+
+	private static String srcDir;
+
+	private static String frameDir;
+
+	/** output of the serial run */
+	private static byte[] parser;
+	private static byte[] scanner;
+	private static String mapping;
+	private static String errors;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		File testFile = new File(PATH);
+		srcName = testFile.getAbsolutePath();
+		srcDir = testFile.getAbsoluteFile().getParent();
+		frameDir = new File(FRAME_DIR).getAbsolutePath();
+
+		File outDir = createTempDir();
+		try {
+			Mapping m = new Mapping();
+			errors = format(GrammarCompilation.compile(srcName, srcDir, frameDir,
+					PACKAGE, null, null, m, null).write(outDir.getPath()));
+			parser = read(new File(outDir, "Parser.java"));
+			scanner = read(new File(outDir, "Scanner.java"));
+			mapping = m.toString();
+		} finally {
+			delete(outDir);
+		}
+	}
+
+	@Test
+	public void testSerialCompilation() {
+		GrammarCompilation compilation = GrammarCompilation.compile(srcName, srcDir, frameDir, PACKAGE, null);
+		assertTrue(compilation.isValid());
+		assertCompilation(compilation);
+	}
+
+	@Test
+	public void testConcurrentGeneration() throws Exception {
+		PrintStream console = System.out;
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int i = 0; i < RUNS; i++) {
+				results.add(executor.submit(createRun(i)));
+			}
+			for (Future<?> result : results) {
+				result.get(); // rethrows assertion errors of the run
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertSame(console, System.out); // only replaced while Coco/R runs
+	}
+
+	/**
+	 * Alternates between writing into an output directory, compiling an ATG file
+	 * in memory and compiling an ATG text as the editor does.
+	 */
+	private static Callable<Void> createRun(final int i) {
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				switch (i % 3) {
+				case 0:
+					File outDir = createTempDir();
+					try {
+						Mapping m = new Mapping();
+						List<CocoError> result = GrammarCompilation.compile(srcName, srcDir,
+								frameDir, PACKAGE, null, null, m, null).write(outDir.getPath());
+						assertEquals(errors, format(result));
+						assertArrayEquals(parser, read(new File(outDir, "Parser.java")));
+						assertArrayEquals(scanner, read(new File(outDir, "Scanner.java")));
+						assertEquals(mapping, m.toString());
+					} finally {
+						delete(outDir);
+					}
+					break;
+				case 1:
+					assertCompilation(GrammarCompilation.compile(srcName, srcDir, frameDir, PACKAGE, null));
+					break;
+				default:
+					InputStream stream = new FileInputStream(srcName);
+					try {
+						assertCompilation(GrammarCompilation.compile(stream, srcName, srcDir, frameDir, PACKAGE, null));
+					} finally {
+						stream.close();
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	private static void assertCompilation(GrammarCompilation compilation) {
+		String parserSource = compilation.getParserSource();
+		String scannerSource = compilation.getScannerSource();
+		assertNotNull(parserSource);
+		assertNotNull(scannerSource);
+		assertArrayEquals(parser, parserSource.getBytes());
+		assertArrayEquals(scanner, scannerSource.getBytes());
+		assertEquals(mapping, compilation.getMapping().toString());
+		assertEquals(errors, format(compilation.getErrors()));
+	}
+
+	private static String format(List<CocoError> list) {
+		StringBuilder sb = new StringBuilder();
+		for (CocoError error : list) {
+			sb.append(error.getWarning() ? "warning " : "error ");
+			sb.append(error.getLine()).append(':').append(error.getColumn());
+			sb.append(' ').append(error.getMessage()).append('\n');
+		}
+		return sb.toString();
+	}
+}
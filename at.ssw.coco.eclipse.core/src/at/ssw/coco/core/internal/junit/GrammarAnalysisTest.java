@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.generatePlain;
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.CocoError;
+
+/**
+ * Analyses a grammar with long chains of deletable productions and recursion
+ * through nested productions and compares the parser with the parser of the
+ * unmodified Coco/R classes.
+ */
+public class GrammarAnalysisTest {
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "analysis.test";
+
+	/** the number of productions */
+	private final static int PRODUCTIONS = 200;
+
+	@Test
+	public void testManyProductions() throws IOException {
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+		File dir = createTempDir();
+		try {
+			File grammar = new File(dir, "Chain.atg");
+			OutputStream stream = new FileOutputStream(grammar);
+			try {
+				stream.write(grammar(PRODUCTIONS).getBytes("US-ASCII"));
+			} finally {
+				stream.close();
+			}
+			File outDir = new File(dir, "out");
+			outDir.mkdir();
+			List<CocoError> errors = GrammarCompilation.compile(grammar.getPath(), dir.getPath(),
+					frameDir, PACKAGE, null, null, null, null).write(outDir.getPath());
+			// all productions but the start symbol are deletable
+			assertEquals(PRODUCTIONS, errors.size());
+			for (CocoError error : errors) {
+				assertTrue(error.getWarning() && error.getMessage().endsWith(" deletable"));
+			}
+
+			File baseline = new File(dir, "baseline");
+			baseline.mkdir();
+			generatePlain(grammar, frameDir, baseline, PACKAGE);
+
+			assertArrayEquals(read(new File(baseline, "Parser.java")), read(new File(outDir, "Parser.java")));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * @return an LL(1) grammar whose productions all start with the next one and
+	 *         call another one nested in an iteration.
+	 */
+	private static String grammar(int productions) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("COMPILER Chain\n\nIGNORE '\\t' + '\\r' + '\\n' + ' '\n\nPRODUCTIONS\n");
+		sb.append("  Chain = P0 \"end\".\n");
+		for (int i = 0; i < productions - 1; i++) {
+			int nested = (7 * i + 3) % productions;
+			sb.append("  P").append(i).append(" = [ \"a").append(i).append("\" ] P").append(i + 1);
+			sb.append(" { \"b").append(i).append("\" P").append(nested);
+			sb.append(" \"c").append(i).append("\" }.\n");
+		}
+		sb.append("  P").append(productions - 1).append(" = [ \"z\" ].\n\nEND Chain.\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.BuildStatistics;
+import at.ssw.coco.core.CocoError;
+
+/**
+ * Edits the productions of a grammar step by step and compares the parser generated
+ * with the incremental analysis of each step with the parser of a complete analysis.
+ */
+public class IncrementalAnalysisTest {
+
+	/**
+	 * relative path from working directory of test-file (engineTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/engineTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "engine.test";
+
+	/** edits of the productions, applied one after the other: the text to replace and its replacement */
+	private final static String[][] EDITS = {
+		// a deletable part becomes mandatory
+		{ "ident [ \"[\" number ']' ]", "ident \"[\" number ']'" },
+		// a new alternative
+		{ "\tWEAK number\n", "\tWEAK number\n\t|\n\t\"(\" Condition<resolverTest> \")\"\n" },
+		// a new production
+		{ "Condition<int resolverTest>", "Assignment = ident \"=\" number.\n\nCondition<int resolverTest>" },
+		{ "\tANY\t", "\tAssignment ANY\t" },
+		// the start symbol can be empty
+		{ "\tStatement<out resolverOut, resolver>\t", "\t[ Statement<out resolverOut, resolver> ]" },
+		// the new production is removed again
+		{ "\tAssignment ANY\t", "\tANY\t" },
+		{ "Assignment = ident \"=\" number.\n\n", "" },
+	};
+
+	@Test
+	public void testEditedProductions() throws IOException {
+		String atg = new String(read(new File(PATH)), "ISO-8859-1").replace("\r\n", "\n");
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+		File dir = createTempDir();
+		try {
+			File grammar = new File(dir, "grammar.atg");
+			generate(grammar, atg, frameDir);
+			int incremental = 0;
+			for (int i = 0; i < EDITS.length; i++) {
+				assertTrue(atg.contains(EDITS[i][0]));
+				atg = atg.replace(EDITS[i][0], EDITS[i][1]);
+
+				BuildStatistics statistics = new BuildStatistics(grammar.getPath());
+				String errors = generate(grammar, atg, frameDir, statistics);
+				if (statistics.toJson().contains("\"incrementalAnalysis\":1")) {
+					incremental++;
+				}
+				// a grammar not analysed before
+				File baseline = new File(dir, "baseline" + i + ".atg");
+				assertEquals(generate(baseline, atg, frameDir), errors);
+				assertArrayEquals(read(new File(baseline.getPath() + ".out", "Parser.java")),
+						read(new File(grammar.getPath() + ".out", "Parser.java")));
+			}
+			assertEquals(EDITS.length, incremental);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static String generate(File file, String atg, String frameDir) throws IOException {
+		return generate(file, atg, frameDir, null);
+	}
+
+	/**
+	 * Writes an ATG file and generates its parser into <i>file</i>.out.
+	 *
+	 * @return the errors.
+	 */
+	private static String generate(File file, String atg, String frameDir, BuildStatistics statistics)
+			throws IOException {
+		OutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(atg.getBytes("ISO-8859-1"));
+		} finally {
+			stream.close();
+		}
+		File outDir = new File(file.getPath() + ".out");
+		outDir.mkdir();
+		List<CocoError> errors = GrammarCompilation.compile(file.getPath(), file.getParent(),
+				frameDir, PACKAGE, null, null, null, statistics).write(outDir.getPath());
+		StringBuilder sb = new StringBuilder();
+		for (CocoError error : errors) {
+			sb.append(error.getWarning() ? "warning " : "error ");
+			sb.append(error.getLine()).append(':').append(error.getColumn());
+			sb.append(' ').append(error.getMessage()).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.compileScanner;
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.utf8WithBom;
+import static at.ssw.coco.core.internal.junit.TestUtilities.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.GeneratorOptions;
+
+/**
+ * Generates the scanner of an IGNORECASE grammar and checks the kind of every
+ * identifier and keyword against the lookup of the lower-case token value in the
+ * literals map, which is how <code>CheckLiteral</code> recognised keywords before
+ * the scanner frames got their <code>Keywords</code> table.
+ */
+public class KeywordTest {
+
+	/**
+	 * relative path from working directory of test-file (engineTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/engineTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "keyword.test";
+
+	/** the kind of <code>ident</code> in engineTest.atg */
+	private final static int IDENT = 1;
+
+	/** mixed-case keywords, near misses and identifiers with non-ASCII letters */
+	private final static String INPUT =
+		"if IF If iF x = 1; iff IFF i f fi ifx xif if0 IF9 ifIf If_ \n"
+		+ "\u0130f \u0130F i\u0307f \u0131f \u0131F \u212aif \u0130\u0130 f\u0130 \u00e4if if\u00e4 \n";
+
+	/** the number of identifiers and keywords in {@link #INPUT} */
+	private final static int WORDS = 27;
+
+	@Test
+	public void testIgnoreCaseKeywords() throws Exception {
+		File dir = createTempDir();
+		try {
+			File input = write(new File(dir, "input.txt"), utf8WithBom(INPUT));
+			for (boolean mapped : new boolean[] { false, true }) {
+				Class<?> scannerClass = generate(new File(dir, mapped ? "mapped" : "plain"), mapped);
+				Field literals = scannerClass.getDeclaredField("literals");
+				literals.setAccessible(true);
+				Map<?, ?> map = (Map<?, ?>) literals.get(null);
+				assertTrue(map.containsKey("if"));
+				assertEquals(WORDS, check(scannerClass.getConstructor(String.class).newInstance(input.getPath()), map));
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static Class<?> generate(File outDir, boolean mapped) throws Exception {
+		outDir.mkdir();
+		GeneratorOptions options = new GeneratorOptions();
+		options.setMappedScannerInput(mapped);
+		GrammarCompilation compilation = GrammarCompilation.compile(PATH, new File(PATH).getParent(),
+				new File(FRAME_DIR).getAbsolutePath(), PACKAGE, null, options, null, null);
+		for (CocoError error : compilation.write(outDir.getPath())) {
+			if (!error.getWarning()) {
+				fail(error.getMessage());
+			}
+		}
+		return compileScanner(outDir, PACKAGE);
+	}
+
+	/**
+	 * Checks the kind of every identifier and keyword <code>scanner</code> returns.
+	 *
+	 * @return the number of identifiers and keywords.
+	 */
+	private static int check(Object scanner, Map<?, ?> literals) throws Exception {
+		Method scan = scanner.getClass().getMethod("Scan");
+		Field kind = scan.getReturnType().getField("kind");
+		Field val = scan.getReturnType().getField("val");
+		kind.setAccessible(true); // Token is package private
+		val.setAccessible(true);
+
+		int count = 0;
+		for (Object t = scan.invoke(scanner); kind.getInt(t) != 0; t = scan.invoke(scanner)) {
+			String text = (String) val.get(t);
+			if (kind.getInt(t) == IDENT || literals.containsValue(Integer.valueOf(kind.getInt(t)))) {
+				Integer expected = (Integer) literals.get(text.toLowerCase());
+				assertEquals(text, expected != null ? expected.intValue() : IDENT, kind.getInt(t));
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.compileScanner;
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static at.ssw.coco.core.internal.junit.TestUtilities.utf8WithBom;
+import static at.ssw.coco.core.internal.junit.TestUtilities.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.GeneratorOptions;
+
+/**
+ * Generates the scanner of a grammar from <code>Scanner.frame</code> and from
+ * <code>MappedScanner.frame</code>, compiles both and compares the tokens they
+ * read from the same files, one by one, with <code>Scanner.ScanAll()</code> and
+ * from a stream that is not kept as a whole.
+ */
+public class MappedScannerTest {
+
+	/**
+	 * relative path from working directory of test-file (minimizeTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/minimizeTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "mapped.test";
+
+	private final static String INPUT =
+		"ident $x @y 42 -7 +3 0x1F 3.14 .5e-3 \"str\\\"ing\" 'c' 1..2 <tag> </tag> "
+		+ "%alpha1 %gamma2 if then <= >= = < > /* nested /* comment */ */ #option // line\n";
+
+	@Test
+	public void testMappedScanner() throws Exception {
+		File dir = createTempDir();
+		try {
+			Class<?> plain = generate(new File(dir, "plain"), false);
+			Class<?> mapped = generate(new File(dir, "mapped"), true);
+
+			StringBuilder large = new StringBuilder();
+			while (large.length() < 200 * 1024) { // more than the 64 KB window of Scanner.frame
+				large.append(INPUT);
+			}
+			File[] inputs = {
+				write(new File(dir, "small.txt"), INPUT.getBytes("ISO-8859-1")),
+				write(new File(dir, "large.txt"), large.toString().getBytes("ISO-8859-1")),
+				write(new File(dir, "utf8.txt"), utf8WithBom(INPUT + "\u0416\u0436 <<\u0401 >>\u04ff\n")),
+			};
+			for (File input : inputs) {
+				List<String> expected = scan(plain, input.getPath());
+				assertEquals(expected, scan(mapped, input.getPath()));
+				assertEquals(expected, scan(mapped, new FileInputStream(input)));
+			}
+
+			// Scanner.frame reports an odd position for the end of an empty file
+			File empty = write(new File(dir, "empty.txt"), new byte[0]);
+			List<String> eof = scan(mapped, empty.getPath());
+			assertEquals(1, eof.size());
+			assertEquals("0 0 0 1:1 ", eof.get(0));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testTokenArray() throws Exception {
+		File dir = createTempDir();
+		try {
+			Class<?>[] scanners = {
+				generate(new File(dir, "plain"), false),
+				generate(new File(dir, "mapped"), true),
+			};
+			StringBuilder large = new StringBuilder();
+			while (large.length() < 200 * 1024) {
+				large.append(INPUT);
+			}
+			File[] inputs = {
+				write(new File(dir, "small.txt"), INPUT.getBytes("ISO-8859-1")),
+				write(new File(dir, "large.txt"), large.toString().getBytes("ISO-8859-1")),
+				write(new File(dir, "utf8.txt"), utf8WithBom(INPUT + "\u0416\u0436 <<\u0401 >>\u04ff\n")),
+				write(new File(dir, "empty.txt"), new byte[0]),
+			};
+			for (Class<?> scannerClass : scanners) {
+				for (File input : inputs) {
+					List<String> expected = scan(scannerClass, input.getPath());
+					Object scanner = scanAll(scannerClass, input);
+					assertEquals(expected, scan(scanner));
+					assertPeekedTokensScanned(scanAll(scannerClass, input));
+					assertEquals(parse(scannerClass.getConstructor(String.class).newInstance(input.getPath())),
+							parse(scanAll(scannerClass, input)));
+				}
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testStreamingScanner() throws Exception {
+		File dir = createTempDir();
+		try {
+			Class<?>[] scanners = {
+				generate(new File(dir, "plain"), false),
+				generate(new File(dir, "mapped"), true),
+			};
+			StringBuilder large = new StringBuilder();
+			while (large.length() < 300 * 1024) {
+				large.append(INPUT);
+			}
+			File[] inputs = {
+				write(new File(dir, "large.txt"), large.toString().getBytes("ISO-8859-1")),
+				write(new File(dir, "utf8.txt"), utf8WithBom(large + "\u0416\u0436 <<\u0401 >>\u04ff\n")),
+			};
+			for (Class<?> scannerClass : scanners) {
+				Constructor<?> streaming = scannerClass.getConstructor(InputStream.class, boolean.class);
+				for (File input : inputs) {
+					Object scanner = streaming.newInstance(new FileInputStream(input), true);
+					assertEquals(scan(scannerClass, new FileInputStream(input)), scan(scanner));
+					assertTrue(bufferLength(scanner) < 64 * 1024); // the whole input has more than 300 KB
+					assertEquals(parse(scannerClass.getConstructor(String.class).newInstance(input.getPath())),
+							parse(streaming.newInstance(new FileInputStream(input), true)));
+				}
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static Class<?> generate(File outDir, boolean mapped) throws Exception {
+		outDir.mkdir();
+		GeneratorOptions options = new GeneratorOptions();
+		options.setMappedScannerInput(mapped);
+		List<CocoError> errors = GrammarCompilation.compile(PATH, new File(PATH).getParent(),
+				new File(FRAME_DIR).getAbsolutePath(), PACKAGE, null, options, null, null).write(outDir.getPath());
+		for (CocoError error : errors) {
+			if (!error.getWarning()) {
+				fail(error.getMessage());
+			}
+		}
+		String source = new String(read(new File(outDir, "Scanner.java")), "ISO-8859-1");
+		assertEquals(mapped, source.contains("FileChannel.MapMode.READ_ONLY"));
+		assertTrue(source.contains("CheckLiteral();"));
+		assertFalse(source.contains("t.val = new String(tval, 0, tlen); CheckLiteral();"));
+		return compileScanner(outDir, PACKAGE);
+	}
+
+	/**
+	 * @return the length of the input buffer of <code>scanner</code>.
+	 */
+	private static int bufferLength(Object scanner) throws Exception {
+		Object buffer = scanner.getClass().getField("buffer").get(scanner);
+		Class<?> bufferClass = buffer.getClass();
+		while (!bufferClass.getSimpleName().equals("Buffer")) {
+			bufferClass = bufferClass.getSuperclass(); // UTF8Buffer
+		}
+		Field buf = bufferClass.getDeclaredField("buf");
+		buf.setAccessible(true);
+		Object bytes = buf.get(buffer);
+		return bytes instanceof ByteBuffer ? ((ByteBuffer) bytes).capacity() : ((byte[]) bytes).length;
+	}
+
+	/**
+	 * @return a new scanner that has read <code>input</code> with <code>ScanAll()</code>.
+	 */
+	private static Object scanAll(Class<?> scannerClass, File input) throws Exception {
+		Object scanner = scannerClass.getConstructor(String.class).newInstance(input.getPath());
+		Object array = scannerClass.getMethod("ScanAll").invoke(scanner);
+		Field size = array.getClass().getField("size");
+		Field kind = array.getClass().getField("kind");
+		size.setAccessible(true); // TokenArray is package private
+		kind.setAccessible(true);
+		int n = size.getInt(array);
+		assertTrue(n > 0);
+		assertEquals(0, ((int[]) kind.get(array))[n - 1]); // EOF
+		return scanner;
+	}
+
+	/**
+	 * Checks that <code>Scan()</code> returns the tokens <code>Peek()</code> returned
+	 * before instead of new ones, and that the tokens are reused further on.
+	 */
+	private static void assertPeekedTokensScanned(Object scanner) throws Exception {
+		Method scan = scanner.getClass().getMethod("Scan");
+		Method peek = scanner.getClass().getMethod("Peek");
+		Object first = peek.invoke(scanner);
+		Object second = peek.invoke(scanner);
+		assertSame(first, scan.invoke(scanner));
+		assertSame(second, scan.invoke(scanner));
+		Set<Object> tokens = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (int i = 0; i < 1000; i++) {
+			tokens.add(scan.invoke(scanner));
+		}
+		assertTrue(tokens.size() <= 8);
+	}
+
+	/**
+	 * @return the error messages of parsing the input of <code>scanner</code>.
+	 */
+	private static String parse(Object scanner) throws Exception {
+		Class<?> parserClass = scanner.getClass().getClassLoader().loadClass(PACKAGE + ".Parser");
+		Object parser = parserClass.getConstructor(scanner.getClass()).newInstance(scanner);
+		Object errors = parserClass.getField("errors").get(parser);
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		Field errorStream = errors.getClass().getField("errorStream");
+		errorStream.setAccessible(true); // Errors is package private
+		errorStream.set(errors, new PrintStream(messages, true));
+		parserClass.getMethod("Parse").invoke(parser);
+		return messages.toString();
+	}
+
+	/**
+	 * @return the tokens read by a new scanner, one string per token.
+	 */
+	private static List<String> scan(Class<?> scannerClass, Object input) throws Exception {
+		return scan(scannerClass.getConstructor(input instanceof String ? String.class : InputStream.class)
+				.newInstance(input));
+	}
+
+	/**
+	 * @return the tokens returned by <code>scanner.Scan()</code>, one string per token.
+	 */
+	private static List<String> scan(Object scanner) throws Exception {
+		Method scan = scanner.getClass().getMethod("Scan");
+		Class<?> tokenClass = scan.getReturnType();
+		Field kind = tokenClass.getField("kind");
+		Field pos = tokenClass.getField("pos");
+		Field charPos = tokenClass.getField("charPos");
+		Field line = tokenClass.getField("line");
+		Field col = tokenClass.getField("col");
+		Field val = tokenClass.getField("val");
+		for (Field field : new Field[] { kind, pos, charPos, line, col, val }) {
+			field.setAccessible(true); // Token is package private
+		}
+
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; ; i++) {
+			Object t = scan.invoke(scanner);
+			tokens.add(kind.get(t) + " " + pos.get(t) + " " + charPos.get(t) + " "
+					+ line.get(t) + ":" + col.get(t) + " " + val.get(t));
+			if (kind.getInt(t) == 0) {
+				break;
+			}
+			assertTrue(i < 1000000);
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.generate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Measures how long Coco/R takes for the grammars of {@link ScannerConstructionTest}
+ * with its own symbol table and automaton and with the indexed ones. It is not a
+ * test; run it from the plug-in directory, optionally with the numbers of tokens:
+ *
+ * <pre>
+ * java at.ssw.coco.core.internal.junit.ScannerConstructionBenchmark [tokens...]
+ * </pre>
+ *
+ * Each time is the best of {@link #RUNS} runs after as many warm-up runs.
+ */
+public final class ScannerConstructionBenchmark {
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "scanner.test";
+
+	private final static int RUNS = 5;
+
+	private final static int[] TOKENS = { 120, 300, 600 };
+
+	private ScannerConstructionBenchmark() {
+		// only main
+	}
+
+	public static void main(String[] args) throws IOException {
+		int[] tokens = TOKENS;
+		if (args.length > 0) {
+			tokens = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				tokens[i] = Integer.parseInt(args[i]);
+			}
+		}
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+		PrintStream out = System.out;
+		out.println("  tokens   Coco/R    indexed");
+		File dir = createTempDir();
+		try {
+			for (int n : tokens) {
+				File grammar = new File(dir, "Tokens" + n + ".atg");
+				OutputStream stream = new FileOutputStream(grammar);
+				try {
+					stream.write(ScannerConstructionTest.grammar(n).getBytes("US-ASCII"));
+				} finally {
+					stream.close();
+				}
+				File outDir = new File(dir, "out");
+				outDir.mkdir();
+				long plain = best(grammar, frameDir, outDir, false);
+				long indexed = best(grammar, frameDir, outDir, true);
+				out.println(String.format("  %-6d %6d ms  %6d ms", Integer.valueOf(n),
+						Long.valueOf(plain), Long.valueOf(indexed)));
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * @return the shortest time of generating the scanner and parser, in milliseconds.
+	 */
+	private static long best(File grammar, String frameDir, File outDir, boolean indexed) {
+		PrintStream out = System.out;
+		// Coco/R reports its progress on the console
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard
+			}
+		}));
+		try {
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < 2 * RUNS; i++) {
+				long start = System.nanoTime();
+				generate(grammar, frameDir, outDir, PACKAGE, indexed);
+				long time = System.nanoTime() - start;
+				if (i >= RUNS) {
+					best = Math.min(best, time);
+				}
+			}
+			return best / 1000000;
+		} finally {
+			System.setOut(out);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.generatePlain;
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.CocoError;
+
+/**
+ * Generates a scanner with many tokens over large, overlapping Unicode character
+ * classes and compares it with the scanner of the unmodified Coco/R classes.
+ */
+public class ScannerConstructionTest {
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "scanner.test";
+
+	/** the number of tokens sharing a prefix */
+	private final static int TOKENS = 120;
+
+	@Test
+	public void testManyTokens() throws IOException {
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+		File dir = createTempDir();
+		try {
+			File grammar = new File(dir, "Tokens.atg");
+			OutputStream stream = new FileOutputStream(grammar);
+			try {
+				stream.write(grammar(TOKENS).getBytes("US-ASCII"));
+			} finally {
+				stream.close();
+			}
+			File outDir = new File(dir, "out");
+			outDir.mkdir();
+			List<CocoError> errors = GrammarCompilation.compile(grammar.getPath(), dir.getPath(),
+					frameDir, PACKAGE, null, null, null, null).write(outDir.getPath());
+			assertEquals(0, errors.size());
+
+			File baseline = new File(dir, "baseline");
+			baseline.mkdir();
+			generatePlain(grammar, frameDir, baseline, PACKAGE);
+
+			// the engine leaves the token text of literals to CheckLiteral of the frame
+			String expected = new String(read(new File(baseline, "Scanner.java")), "ISO-8859-1")
+					.replace("t.val = new String(tval, 0, tlen); CheckLiteral();", "CheckLiteral();");
+			assertEquals(expected, new String(read(new File(outDir, "Scanner.java")), "ISO-8859-1"));
+			assertArrayEquals(read(new File(baseline, "Parser.java")), read(new File(outDir, "Parser.java")));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * @return a grammar whose tokens all start with <code>$</code> followed by one
+	 *         of <code>tokens</code> overlapping character classes.
+	 */
+	static String grammar(int tokens) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("COMPILER Tokens\n\nCHARACTERS\n");
+		sb.append("  letter = 'A'..'Z' + 'a'..'z' + '\\u00c0'..'\\u024f'.\n");
+		sb.append("  digit = '0'..'9'.\n");
+		for (int i = 0; i < tokens; i++) {
+			sb.append("  c").append(i).append(" = ").append(range(0x0400 + 7 * i, 0x0400 + 7 * i + 20));
+			sb.append(" + ").append(range(0x3000 + 13 * i, 0x3000 + 13 * i + 40)).append(".\n");
+		}
+		sb.append("\nTOKENS\n  ident = letter { letter | digit }.\n");
+		for (int i = 0; i < tokens; i++) {
+			sb.append("  t").append(i).append(" = '$' c").append(i).append(" { c").append(i);
+			sb.append(" | digit } \":").append(i).append("!\".\n");
+		}
+		sb.append("\nIGNORE '\\t' + '\\r' + '\\n' + ' '\n\nPRODUCTIONS\n  Tokens = ident {\n    ident\n");
+		for (int i = 0; i < tokens; i++) {
+			sb.append("  | t").append(i).append(" | \"kw").append(i).append("\"\n");
+		}
+		sb.append("  }.\n\nEND Tokens.\n");
+		return sb.toString();
+	}
+
+	private static String range(int from, int to) {
+		return String.format("'\\u%04x'..'\\u%04x'", Integer.valueOf(from), Integer.valueOf(to));
+	}
+}
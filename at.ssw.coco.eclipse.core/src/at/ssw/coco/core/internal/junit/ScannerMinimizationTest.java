@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.createTempDir;
+import static at.ssw.coco.core.internal.junit.TestUtilities.delete;
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+import at.ssw.coco.core.BuildStatistics;
+import at.ssw.coco.core.CocoError;
+import at.ssw.coco.core.GeneratorOptions;
+
+/**
+ * Generates the scanner of a grammar whose tokens have alternatives with common
+ * parts, once with and once without minimising the automaton.
+ */
+public class ScannerMinimizationTest {
+
+	/**
+	 * relative path from working directory of test-file (minimizeTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/minimizeTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "minimize.test";
+
+	@Test
+	public void testMinimizedScanner() throws IOException {
+		File dir = createTempDir();
+		try {
+			File plainDir = new File(dir, "plain");
+			List<String> infos = new ArrayList<String>();
+			BuildStatistics plain = generate(plainDir, false, infos);
+			assertEquals(0, infos.size());
+			File minimizedDir = new File(dir, "minimized");
+			BuildStatistics minimized = generate(minimizedDir, true, infos);
+
+			int states = metric(plain, "dfaStates");
+			assertEquals(-1, metric(plain, "dfaStatesBeforeMinimization"));
+			assertEquals(states, metric(minimized, "dfaStatesBeforeMinimization"));
+			assertTrue(metric(minimized, "dfaStates") < states);
+			// the state counts are reported to the user
+			assertEquals(1, infos.size());
+			assertEquals("Minimized the scanner automaton from " + states + " to "
+					+ metric(minimized, "dfaStates") + " states", infos.get(0));
+
+			// one case in NextToken per state except the start state
+			String scanner = new String(read(new File(minimizedDir, "Scanner.java")), "ISO-8859-1");
+			assertEquals(metric(minimized, "dfaStates") - 1, count(scanner, "\t\t\t\tcase [1-9][0-9]*:"));
+
+			assertArrayEquals(read(new File(plainDir, "Parser.java")), read(new File(minimizedDir, "Parser.java")));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static BuildStatistics generate(File outDir, boolean minimize, List<String> infos) {
+		outDir.mkdir();
+		GeneratorOptions options = new GeneratorOptions();
+		options.setMinimizeScanner(minimize);
+		BuildStatistics statistics = new BuildStatistics(PATH);
+		List<CocoError> errors = GrammarCompilation.compile(PATH, new File(PATH).getParent(),
+				new File(FRAME_DIR).getAbsolutePath(), PACKAGE, null, options, null, statistics).write(outDir.getPath());
+		for (CocoError error : errors) {
+			if (!error.getWarning()) {
+				fail(error.getMessage());
+			}
+			if (error.getInfo()) {
+				infos.add(error.getMessage());
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * @return the value of a metric, or <code>-1</code> if it is not set.
+	 */
+	private static int metric(BuildStatistics statistics, String name) {
+		Matcher m = Pattern.compile("\"" + name + "\":(\\d+)").matcher(statistics.toJson());
+		return m.find() ? Integer.parseInt(m.group(1)) : -1;
+	}
+
+	private static int count(String text, String regex) {
+		Matcher m = Pattern.compile(regex).matcher(text);
+		int count = 0;
+		while (m.find()) {
+			count++;
+		}
+		return count;
+	}
+}
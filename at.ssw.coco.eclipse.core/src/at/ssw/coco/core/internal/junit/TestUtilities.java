@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Files and plain Coco/R runs shared by the tests.
+ */
+final class TestUtilities {
+
+	private TestUtilities() {
+		// private constructor - prevent instantiation of this utility class
+	}
+
+	/**
+	 * Generates the scanner and parser with the unmodified Coco/R classes, like
+	 * <code>Coco.main</code>, which exits the VM.
+	 *
+	 * @param grammar The atg file.
+	 * @param frameDir The directory containing the frame files.
+	 * @param outDir The output directory.
+	 * @param nsName The parsers package name.
+	 */
+	static void generatePlain(File grammar, String frameDir, File outDir, String nsName) {
+		generate(grammar, frameDir, outDir, nsName, false);
+	}
+
+	/**
+	 * Generates the scanner and parser like {@link #generatePlain(File, String, File, String)},
+	 * optionally with the symbol table and automaton that index the character classes
+	 * and melted states, but without the other extensions of the engine.
+	 *
+	 * @param grammar The atg file.
+	 * @param frameDir The directory containing the frame files.
+	 * @param outDir The output directory.
+	 * @param nsName The parsers package name.
+	 * @param indexed Whether <code>IndexedTab</code> and <code>IndexedDFA</code> are used.
+	 */
+	static void generate(File grammar, String frameDir, File outDir, String nsName, boolean indexed) {
+		Coco.Parser parser = new Coco.Parser(new Coco.Scanner(grammar.getPath()));
+		parser.trace = new Coco.Trace(outDir.getPath());
+		parser.tab = indexed ? (Coco.Tab) newInstance("Coco.IndexedTab", parser) : new Coco.Tab(parser);
+		parser.dfa = indexed ? (Coco.DFA) newInstance("Coco.IndexedDFA", parser) : new Coco.DFA(parser);
+		parser.pgen = new Coco.ParserGen(parser);
+		parser.tab.srcName = grammar.getPath();
+		parser.tab.srcDir = grammar.getParent();
+		parser.tab.nsName = nsName;
+		parser.tab.frameDir = frameDir;
+		parser.tab.outDir = outDir.getPath();
+		parser.Parse();
+		parser.trace.Close();
+	}
+
+	/**
+	 * Creates an instance of a class of the package <code>Coco</code>, which is
+	 * not visible to the tests.
+	 */
+	private static Object newInstance(String className, Coco.Parser parser) {
+		try {
+			Constructor<?> constructor = Class.forName(className).getDeclaredConstructor(Coco.Parser.class);
+			constructor.setAccessible(true);
+			return constructor.newInstance(parser);
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot create " + className, e);
+		}
+	}
+
+	/**
+	 * @return a new empty directory, to be removed with {@link #delete(File)}.
+	 */
+	static File createTempDir() throws IOException {
+		File dir = File.createTempFile("coco", "");
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Cannot create directory: " + dir.getPath());
+		}
+		return dir;
+	}
+
+	/**
+	 * Deletes a file, or a directory with all its content.
+	 */
+	static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * @return the content of <code>file</code>.
+	 */
+	static byte[] read(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			int n = 0;
+			while (n < bytes.length) {
+				int r = stream.read(bytes, n, bytes.length - n);
+				if (r < 0) {
+					throw new IOException("Unexpected end of file: " + file.getPath());
+				}
+				n += r;
+			}
+		} finally {
+			stream.close();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Compiles a generated scanner and parser.
+	 *
+	 * @param outDir The directory containing <code>Scanner.java</code> and <code>Parser.java</code>.
+	 * @param nsName The parsers package name.
+	 * @return the scanner class, loaded by a new class loader.
+	 */
+	static Class<?> compileScanner(File outDir, String nsName) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertNotNull("a JDK is needed to compile the generated scanners", compiler);
+		File classes = new File(outDir, "classes");
+		classes.mkdir();
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		int result = compiler.run(null, messages, messages, "-nowarn", "-d", classes.getPath(),
+				new File(outDir, "Scanner.java").getPath(), new File(outDir, "Parser.java").getPath());
+		if (result != 0) {
+			fail(messages.toString());
+		}
+		ClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() }, null);
+		return loader.loadClass(nsName + ".Scanner");
+	}
+
+	/**
+	 * @return the UTF-8 encoding of <code>text</code> with a byte order mark,
+	 *         which makes a generated scanner read UTF-8.
+	 */
+	static byte[] utf8WithBom(String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		byte[] result = new byte[bytes.length + 3];
+		result[0] = (byte) 0xEF;
+		result[1] = (byte) 0xBB;
+		result[2] = (byte) 0xBF;
+		System.arraycopy(bytes, 0, result, 3, bytes.length);
+		return result;
+	}
+
+	/**
+	 * @return <code>file</code>, after <code>bytes</code> were written to it.
+	 */
+	static File write(File file, byte[] bytes) throws IOException {
+		OutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(bytes);
+		} finally {
+			stream.close();
+		}
+		return file;
+	}
+}
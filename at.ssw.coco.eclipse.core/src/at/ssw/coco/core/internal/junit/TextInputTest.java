@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2009 Institute for System Software, JKU Linz
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *******************************************************************************/
+
+package at.ssw.coco.core.internal.junit;
+
+import static at.ssw.coco.core.internal.junit.TestUtilities.read;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import Coco.GrammarCompilation;
+
+/**
+ * Generates parsers from the characters of an ATG text, as the editor does, and
+ * compares them with parsers generated from the bytes of the same grammar.
+ */
+public class TextInputTest {
+
+	/**
+	 * relative path from working directory of test-file (engineTest.atg)
+	 */
+	private final static String PATH = "src/at/ssw/coco/core/internal/junit/engineTest.atg";
+
+	/**
+	 * relative path from working directory of the frame files
+	 */
+	private final static String FRAME_DIR = "lib";
+
+	private final static String PACKAGE = "text.test";
+
+	private final static String GRAMMAR =
+		"COMPILER Text\n" +
+		"CHARACTERS letter = 'a'..'z'.\n" +
+		"TOKENS ident = letter {letter}.\n" +
+		"PRODUCTIONS\n" +
+		"Text = ident (. String s = \"%s\"; .) { ident }.\n" +
+		"END Text.\n";
+
+	@Test
+	public void testSameParserAsStream() throws IOException {
+		File testFile = new File(PATH);
+		String srcName = testFile.getAbsolutePath();
+		String srcDir = testFile.getAbsoluteFile().getParent();
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+
+		InputStream stream = new FileInputStream(testFile);
+		String expected;
+		try {
+			expected = GrammarCompilation.compile(stream, srcName, srcDir, frameDir, PACKAGE, null).getParserSource();
+		} finally {
+			stream.close();
+		}
+		String text = new String(read(testFile), "ISO-8859-1");
+		assertNotNull(expected);
+		assertEquals(expected, GrammarCompilation.compile(text, srcName, srcDir, frameDir, PACKAGE, null).getParserSource());
+	}
+
+	@Test
+	public void testNonAsciiActions() {
+		File testFile = new File(PATH);
+		String srcName = new File(testFile.getAbsoluteFile().getParentFile(), "text.atg").getPath();
+		String srcDir = testFile.getAbsoluteFile().getParent();
+		String frameDir = new File(FRAME_DIR).getAbsolutePath();
+
+		String first = String.format(GRAMMAR, "\u00e4\u00f6\u00fc");
+		String parser = GrammarCompilation.compile(first, srcName, srcDir, frameDir, PACKAGE, null).getParserSource();
+		assertTrue(parser.contains("String s = \"\u00e4\u00f6\u00fc\";"));
+
+		// the second run only changes a semantic action and is spliced
+		String second = String.format(GRAMMAR, "\u20ac \u03bb");
+		GrammarCompilation spliced = GrammarCompilation.compile(second, srcName, srcDir, frameDir, PACKAGE, null);
+		parser = spliced.getParserSource();
+		assertTrue(parser.contains("String s = \"\u20ac \u03bb\";"));
+		// a trace string disables splicing
+		assertEquals(GrammarCompilation.compile(second, srcName, srcDir, frameDir, PACKAGE, "S").getParserSource(), parser);
+		// Coco/R only runs for the symbol table
+		assertNotNull(spliced.getTab().nonterminals);
+	}
+}
@@ -1,10 +1,8 @@
 package at.ssw.coco.ide.features.semanticHighlighting;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,12 +21,15 @@ import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.source.ISourceViewer;
 
+import Coco.GrammarCompilation;
 import at.ssw.coco.builder.Activator;
 import at.ssw.coco.core.CoreUtilities;
+import at.ssw.coco.core.FrameTemplate;
 import at.ssw.coco.ide.IdeUtilities;
 import at.ssw.coco.ide.editor.ATGEditor;
 import at.ssw.coco.lib.model.atgmodel.ATGModel;
@@ -231,8 +232,26 @@ public class DocumentSynchronizer {
 	/** The used atg file */
 	private IDocument atgDocument;
 
-	/** The used frame file */
-	private StringBuffer frameFile;
+	/** The compilation of the atg file the java file was generated from */
+	private GrammarCompilation compilation;
+
+	/** The modification stamp of the atg file when it was compiled */
+	private long compiledStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/** The frame code following the imports, i.e. between -->begin and -->constants */
+	private String importsPostCode;
+
+	/** The frame code preceding the declarations, i.e. between -->constants and -->declarations */
+	private String declPreCode;
+
+	/** The frame code following the declarations, i.e. between -->declarations and -->pragmas */
+	private String declPostCode;
+
+	/** The frame code preceding the productions, i.e. between -->pragmas and -->productions */
+	private String productionsPreCode;
+
+	/** The frame code following the productions, i.e. between -->productions and -->parseRoot */
+	private String productionsPostCode;
 
 	/** The abstract syntax tree parsed from the java file */
 	private CompilationUnit ast;
@@ -415,42 +434,22 @@ public class DocumentSynchronizer {
 			productionsSegments = null;
 		}
 
-		String preCode, postCode;
-		int segmentStart, segmentEnd;
-
-		if (importsSegment != null) {
-			segmentStart = 0;
-			segmentEnd = frameFile.indexOf("-->begin");
-			segmentStart = segmentEnd + "-->begin".length();
-			segmentEnd = frameFile.indexOf("-->constants");
-			postCode = frameFile.substring(segmentStart, segmentEnd);
-			imports = javaFile.substring(0, javaFile.indexOf(postCode));
+		if (importsSegment != null && importsPostCode != null) {
+			imports = javaFile.substring(0, javaFile.indexOf(importsPostCode));
 			importsBegin = javaFile.indexOf(imports);
 			importsEnd = importsBegin + imports.length();
 		}
 
-		if (declSegment != null) {
-			segmentStart = frameFile.indexOf("-->constants") + "-->constants".length();
-			segmentEnd = frameFile.indexOf("-->declarations");
-			preCode = frameFile.substring(segmentStart, segmentEnd);
-			segmentStart = segmentEnd + "-->declarations".length();
-			segmentEnd = frameFile.indexOf("-->pragmas");
-			postCode = frameFile.substring(segmentStart, segmentEnd);
-			declarations = javaFile.substring(javaFile.indexOf(preCode)
-					+ preCode.length(), javaFile.indexOf(postCode));
+		if (declSegment != null && declPreCode != null && declPostCode != null) {
+			declarations = javaFile.substring(javaFile.indexOf(declPreCode)
+					+ declPreCode.length(), javaFile.indexOf(declPostCode));
 			declBegin = javaFile.indexOf(declarations);
 			declEnd = declBegin + declarations.length();
 		}
 
-		if (productionsSegments != null) {
-			segmentStart = frameFile.indexOf("-->pragmas") + "-->pragmas".length();
-			segmentEnd = frameFile.indexOf("-->productions");
-			preCode = frameFile.substring(segmentStart, segmentEnd);
-			segmentStart = segmentEnd + "-->productions".length();
-			segmentEnd = frameFile.indexOf("-->parseRoot");
-			postCode = frameFile.substring(segmentStart, segmentEnd);
-			productions = javaFile.substring(javaFile.indexOf(preCode)
-					+ preCode.length(), javaFile.indexOf(postCode));
+		if (productionsSegments != null && productionsPreCode != null && productionsPostCode != null) {
+			productions = javaFile.substring(javaFile.indexOf(productionsPreCode)
+					+ productionsPreCode.length(), javaFile.indexOf(productionsPostCode));
 			productionsBegin = javaFile.indexOf(productions);
 			productionsEnd = productionsBegin + productions.length();
 		}
@@ -460,17 +459,28 @@ public class DocumentSynchronizer {
 	 * initiates all necessary actions when the atg file was changed
 	 */
 	public void documentChanged() {
-		compileJavaFile();
-		createAst();
+		if (compileJavaFile()) {
+			createAst();
+		}
 		calcSegments();
 	}
 
 	/**
-	 * Generate temporary parser file from the current atg
+	 * Generate temporary parser file from the current atg, unless it was
+	 * generated from the same version of the atg already.
+	 * 
+	 * @return whether the java file was generated again
 	 */
-	private void compileJavaFile(){		
+	private boolean compileJavaFile(){		
+		long stamp = atgDocument instanceof IDocumentExtension4
+				? ((IDocumentExtension4) atgDocument).getModificationStamp()
+				: IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		if (compilation != null && stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+				&& stamp == compiledStamp) {
+			return false;
+		}
+		
 		IFile editorFile = (IFile)fEditor.getEditorInput().getAdapter(IFile.class);
-		InputStream s = new ByteArrayInputStream(atgDocument.get().getBytes());
 		
 		//set paths right
 		String srcName = editorFile.getLocation().toString();
@@ -494,7 +504,12 @@ public class DocumentSynchronizer {
 		// which read the Parser from a temporary file and it works.
 		
 		//generate java file:
-		String j = CoreUtilities.generateTemporaryParser(s, srcName, srcDir, frameDir, nsName);
+		compilation = CoreUtilities.compileGrammar(atgDocument.get(), srcName, srcDir, frameDir, nsName);
+		compiledStamp = stamp;
+		String j = compilation.getParserSource();
+		if (j == null) {
+			j = ""; // the grammar has errors
+		}
 		StringReader r = new StringReader(j);
 		BufferedReader reader = new BufferedReader(r);
 		
@@ -508,7 +523,7 @@ public class DocumentSynchronizer {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-	
+		return true;
 	}
 	
 	/**
@@ -566,26 +581,38 @@ public class DocumentSynchronizer {
 	 * sets the frame file corresponding to the atg file
 	 */
 	private void setFrameFile() {
-
-		StringBuffer src = new StringBuffer();
-		BufferedReader reader;
-		String line;
+		FrameTemplate frame = null;
 		IFile editorFile = (IFile) fEditor.getEditorInput().getAdapter(
 				IFile.class);
 		try {
 			String frameDir = getFrameDir(editorFile);
-			reader = new BufferedReader(new FileReader(frameDir
-					+ Path.SEPARATOR + "Parser.frame"));
-			while ((line = reader.readLine()) != null) {
-				src.append(line);
-				src.append("\n");
-			}
+			frame = FrameTemplate.get(new File(frameDir, CoreUtilities.PARSER_TEMPLATE));
 		} catch (IOException e) {
 			IdeUtilities.logError(e.getMessage(), e);
 		} catch (CoreException e) {
 			IdeUtilities.logError(e.getMessage(), e);
 		}
-		frameFile = src;
+		importsPostCode = getFrameCode(frame, "begin");
+		declPreCode = getFrameCode(frame, "constants");
+		declPostCode = getFrameCode(frame, "declarations");
+		productionsPreCode = getFrameCode(frame, "pragmas");
+		productionsPostCode = getFrameCode(frame, "productions");
+	}
+
+	/**
+	 * @param frame
+	 *            the frame template or <code>null</code>
+	 * @param marker
+	 *            the marker name
+	 * @return the frame code following the marker with line breaks converted
+	 *         to \n like in the java file, or <code>null</code>
+	 */
+	private static String getFrameCode(FrameTemplate frame, String marker) {
+		String code = frame != null ? frame.getFragment(marker) : null;
+		if (code == null) {
+			return null;
+		}
+		return code.replace("\r\n", "\n").replace('\r', '\n');
 	}
 
 	/**
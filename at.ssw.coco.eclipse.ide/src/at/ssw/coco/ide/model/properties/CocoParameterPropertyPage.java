@@ -16,8 +16,11 @@
  */
 package at.ssw.coco.ide.model.properties;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
@@ -41,6 +44,7 @@ import org.eclipse.ui.dialogs.PropertyPage;
 import org.eclipse.ui.forms.widgets.Section;
 
 import at.ssw.coco.builder.Activator;
+import at.ssw.coco.core.CoreUtilities;
 
 /**
  * A property page for .atg files that allows to set their Coco/R parameters.
@@ -82,6 +86,10 @@ public class CocoParameterPropertyPage extends PropertyPage {
 	private Button chkCustomNamespace;
 	private Text txtCustomNamespace;
 
+	private Button chkMinimizeScanner;
+
+	private Button chkMapScannerInput;
+
 	private Button chkCustomFramesDir;
 
 	private Text txtCustomFramesDir;
@@ -234,6 +242,20 @@ public class CocoParameterPropertyPage extends PropertyPage {
 		txtCustomNamespace.setLayoutData(gdTxt);
 		new Label(mainGroup, SWT.NONE).setVisible(false);
 
+		chkMinimizeScanner = new Button(mainGroup, SWT.CHECK);
+		chkMinimizeScanner.setText("Minimize scanner automaton");
+		chkMinimizeScanner.setLayoutData(gdChk);
+		chkMinimizeScanner.setFont(font);
+		new Label(mainGroup, SWT.NONE).setVisible(false);
+		new Label(mainGroup, SWT.NONE).setVisible(false);
+
+		chkMapScannerInput = new Button(mainGroup, SWT.CHECK);
+		chkMapScannerInput.setText("Map scanner input into memory (" + CoreUtilities.MAPPED_SCANNER_TEMPLATE + ")");
+		chkMapScannerInput.setLayoutData(gdChk);
+		chkMapScannerInput.setFont(font);
+		new Label(mainGroup, SWT.NONE).setVisible(false);
+		new Label(mainGroup, SWT.NONE).setVisible(false);
+
 		Label separator = new Label(composite, SWT.SEPARATOR | SWT.HORIZONTAL);
 		separator.setVisible(false);
 		separator.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
@@ -338,6 +360,8 @@ public class CocoParameterPropertyPage extends PropertyPage {
 		txtCustomFramesDir.setText("");
 		chkCustomNamespace.setSelection(false);
 		txtCustomNamespace.setText("");
+		chkMinimizeScanner.setSelection(false);
+		chkMapScannerInput.setSelection(false);
 		txtTraceString.setText("");
 
 		super.performDefaults();
@@ -382,6 +406,11 @@ public class CocoParameterPropertyPage extends PropertyPage {
 				chkCustomNamespace.setSelection(useNamespace);
 				txtCustomNamespace.setEnabled(useNamespace);
 
+				chkMinimizeScanner.setSelection(isTrue(file
+						.getPersistentProperty(Activator.MINIMIZE_COCO_SCANNER)));
+				chkMapScannerInput.setSelection(isTrue(file
+						.getPersistentProperty(Activator.MAP_COCO_SCANNER_INPUT)));
+
 				String traceString = nonNull(file
 						.getPersistentProperty(Activator.COCO_TRACE_STRING));
 				txtTraceString.setText(traceString);
@@ -401,6 +430,8 @@ public class CocoParameterPropertyPage extends PropertyPage {
 				String customFramesDir = txtCustomFramesDir.getText();
 				boolean useCustomNamespace = chkCustomNamespace.getSelection();
 				String customNamespace = txtCustomNamespace.getText();
+				boolean minimizeScanner = chkMinimizeScanner.getSelection();
+				boolean mapScannerInput = chkMapScannerInput.getSelection();
 				String traceString = nonEmtpyOrNull(txtTraceString.getText());
 
 				if (!useCustomOutputDir && "".equals(customOutputDir)) {
@@ -427,11 +458,54 @@ public class CocoParameterPropertyPage extends PropertyPage {
 						trueOrNull(useCustomNamespace));
 				file.setPersistentProperty(Activator.CUSTOM_COCO_NAMESPACE,
 						customNamespace);
+				file.setPersistentProperty(Activator.MINIMIZE_COCO_SCANNER,
+						trueOrNull(minimizeScanner));
+				file.setPersistentProperty(Activator.MAP_COCO_SCANNER_INPUT,
+						trueOrNull(mapScannerInput));
 				file.setPersistentProperty(Activator.COCO_TRACE_STRING,
 						traceString);
+
+				if (mapScannerInput && !(useCustomFramesDir && hasFrame(customFramesDir))) {
+					copyTemplate(file.getParent(), CoreUtilities.MAPPED_SCANNER_TEMPLATE);
+				}
+
+				Activator.getDefault().getFrameDependencyIndex().update(file);
 			} catch (CoreException ex) {
 				ex.printStackTrace();
 			}
 		}
 	}
+
+	/**
+	 * @param framesDir The custom frames directory, relative to the project root or absolute.
+	 * @return whether the frames directory contains the mapped scanner frame.
+	 */
+	private boolean hasFrame(String framesDir) {
+		IPath path = Path.fromPortableString(framesDir);
+		if (!path.isAbsolute()) {
+			path = getProject().getLocation().append(path);
+		}
+		return path.append(CoreUtilities.MAPPED_SCANNER_TEMPLATE).toFile().exists();
+	}
+
+	/**
+	 * Copies a frame template next to the grammar, like the new grammar wizard
+	 * does, unless it is already there.
+	 */
+	private static void copyTemplate(IContainer destination, String filename) throws CoreException {
+		IFile destFile = destination.getFile(new Path(filename));
+		if (destFile.exists()) {
+			return;
+		}
+		try {
+			InputStream fin = CoreUtilities.getTemplate(filename).openStream();
+			try {
+				destFile.create(fin, true, null);
+			} finally {
+				fin.close();
+			}
+		} catch (IOException ex) {
+			CoreUtilities.logError("Could not open file", ex);
+		}
+	}
 }
@@ -17,6 +17,7 @@ package at.ssw.coco.lib.model.atgAst.internal;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -244,21 +245,87 @@ class StartStates {
 		public Elem(int key, int val) { this.key = key; this.val = val; }
 	}
 
-	private Elem[] tab = new Elem[128];
+	private static final int DIRECT = 256; // ASCII and Latin-1 are looked up directly
+
+	private int[] direct = new int[DIRECT];
+	private Elem[] tab = new Elem[128]; // larger characters and EOF
 
 	public void set(int key, int val) {
+		if (key < DIRECT) {
+			direct[key] = val;
+			return;
+		}
 		Elem e = new Elem(key, val);
 		int k = key % 128;
 		e.next = tab[k]; tab[k] = e;
 	}
 
 	public int state(int key) {
+		if (key < DIRECT) return direct[key];
 		Elem e = tab[key % 128];
 		while (e != null && e.key != key) e = e.next;
 		return e == null ? 0: e.val;
 	}
 }
 
+//-----------------------------------------------------------------------------------
+// Keywords  -- maps the text of literal tokens to their kinds without creating strings
+//-----------------------------------------------------------------------------------
+class Keywords {
+	private char[][] names; // hash table with linear probing
+	private int[] kinds;
+	private int mask;
+	private boolean ignoreCase; // the names are in lower case
+	private Map literals;
+
+	public Keywords(Map literals, boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+		this.literals = literals;
+		int size = 16;
+		while (size < 2 * literals.size()) size *= 2;
+		names = new char[size][];
+		kinds = new int[size];
+		mask = size - 1;
+		for (Iterator iter = literals.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry e = (Map.Entry) iter.next();
+			char[] name = ((String) e.getKey()).toCharArray();
+			int k = hash(name, name.length) & mask;
+			while (names[k] != null) k = (k + 1) & mask;
+			names[k] = name; kinds[k] = ((Integer) e.getValue()).intValue();
+		}
+	}
+
+	private int hash(char[] val, int len) {
+		int h = len;
+		for (int i = 0; i < len; i++) {
+			h = 31 * h + (ignoreCase ? Character.toLowerCase(val[i]) : val[i]);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	// returns the kind of the literal val[0..len-1], or -1 if it is no literal
+	public int kind(char[] val, int len) {
+		if (ignoreCase) {
+			for (int i = 0; i < len; i++) {
+				if (val[i] >= 128) { // String.toLowerCase may differ per character, e.g. for the dotted capital I
+					Object kind = literals.get(new String(val, 0, len).toLowerCase());
+					return kind == null ? -1 : ((Integer) kind).intValue();
+				}
+			}
+		}
+		for (int k = hash(val, len) & mask; names[k] != null; k = (k + 1) & mask) {
+			char[] name = names[k];
+			if (name.length == len) {
+				int i = 0;
+				if (ignoreCase) while (i < len && Character.toLowerCase(val[i]) == name[i]) i++;
+				else while (i < len && val[i] == name[i]) i++;
+				if (i == len) return kinds[k];
+			}
+		}
+		return -1;
+	}
+}
+
 //-----------------------------------------------------------------------------------
 // Scanner
 //-----------------------------------------------------------------------------------
@@ -280,6 +347,7 @@ public class Scanner {
 	int oldEols;       // EOLs that appeared in a comment;
 	static final StartStates start; // maps initial token character to start state
 	static final Map literals;      // maps literal strings to literal kinds
+	static final Keywords keywords; // maps literal token texts to literal kinds
 
 	Token tokens;      // list of tokens already peeked (first token is a dummy)
 	Token pt;          // current peek token
@@ -333,6 +401,7 @@ public class Scanner {
 		literals.put("IF", new Integer(40));
 		literals.put("CONTEXT", new Integer(41));
 
+		keywords = new Keywords(literals, IgnoresCase());
 	}
 	
 	public Scanner (String fileName) {
@@ -438,14 +507,20 @@ public class Scanner {
 
 
 	void CheckLiteral() {
-		String val = t.val;
-
-		Object kind = literals.get(val);
-		if (kind != null) {
-			t.kind = ((Integer) kind).intValue();
+		int kind = keywords.kind(tval, tlen);
+		if (kind >= 0) {
+			t.kind = kind;
 		}
 	}
 
+	// whether literals are recognized ignoring case (the generator inserts
+	// the conversion of val to lower case for IGNORECASE)
+	static boolean IgnoresCase() {
+		String val = "A";
+
+		return !val.equals("A");
+	}
+
 	Token NextToken() {
 		while (ch == ' ' ||
 			ch >= 9 && ch <= 10 || ch == 13
@@ -66,11 +66,12 @@ public class CLNGContentAssistProcessor implements IContentAssistProcessor {
 		String editorSuffix = fLoader.getEditorSuffix();
 		String srcDir = preferences+Path.SEPARATOR+editorSuffix;
 		String name = editorSuffix + ".atg";
-		String nsName = fLoader.getPackageName();
 		name = srcDir+ Path.SEPARATOR + name;
 		
 		
-		tab = CoreUtilities.generateParserTab(name, srcDir, srcDir, nsName);
+		// the package does not change the symbol table, so the compilation of the
+		// editor action is shared
+		tab = CoreUtilities.compileGrammar(name, srcDir, srcDir, null).getTab();
 		
 		
 	}
@@ -38,7 +38,8 @@ import org.eclipse.swt.graphics.Color;
 import org.eclipse.ui.IActionDelegate;
 import org.eclipse.ui.internal.editors.text.EditorsPlugin;
 
-import Coco.Parser;
+import Coco.GrammarCompilation;
+import Coco.Tab;
 import Coco.TokenMapGenerator;
 import at.ssw.coco.core.CoreUtilities;
 import at.ssw.coco.plEditor.EditorPlugin;
@@ -108,7 +109,8 @@ public class EditorAction extends Action implements IActionDelegate {
 		
 		
 		//create Scanner, Parser and configuration files for this new editor	
-		Parser parser = CoreUtilities.generateEditor(atgCopy.getAbsolutePath(), test, test, test, null, null);
+		GrammarCompilation compilation = CoreUtilities.compileGrammar(atgCopy.getAbsolutePath(), test, test, null);
+		compilation.write(test);
 
 		
 		
@@ -157,7 +159,7 @@ public class EditorAction extends Action implements IActionDelegate {
 		
 		try {
 //			createConfigFiles(parser, configPath, editorSuffix, packageName);
-			createConfigFiles(parser, folderPath, test, editorSuffix, packageName);
+			createConfigFiles(compilation.getTab(), folderPath, test, editorSuffix, packageName);
 			if(!editorFile.exists()){
 				editorFile.createNewFile();
 			}
@@ -215,9 +217,9 @@ public class EditorAction extends Action implements IActionDelegate {
 	}
 	
 	
-	private void createConfigFiles(Parser parser, String folderPath, String configPath, String editorSuffix, String packageName) throws IOException{
-		ArrayList terminals = parser.tab.terminals;
-		ArrayList productions = parser.tab.nonterminals;
+	private void createConfigFiles(Tab tab, String folderPath, String configPath, String editorSuffix, String packageName) throws IOException{
+		ArrayList terminals = tab.terminals;
+		ArrayList productions = tab.nonterminals;
 		TokenMapGenerator provider = new TokenMapGenerator(terminals, productions);
 		
 		